@@ -0,0 +1,68 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A Graph with bulk operations that touch many vertices or edges in one
+ * pass over the rep, as implemented by the concrete graphs. Graph itself
+ * may not gain methods, so they are declared here.
+ * 
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface BulkGraph<L> extends Graph<L> {
+    
+    /**
+     * @return number of edges in this graph
+     */
+    public int edgeCount();
+    
+    /**
+     * Stream all edges of this graph without copying them into a collection.
+     * The stream knows its exact size. The graph must not be modified while
+     * the stream is in use.
+     * 
+     * @param parallel true for a parallel stream
+     * @return stream of every edge of this graph, once each
+     */
+    public Stream<WeightedEdge<L>> edges(boolean parallel);
+    
+    /**
+     * Remove several vertices, and all edges to or from them.
+     * 
+     * @param doomed labels of vertices to remove; labels not in this graph are ignored
+     * @return number of vertices removed
+     */
+    public int removeAll(Collection<L> doomed);
+    
+    /**
+     * Remove every vertex whose label satisfies a predicate, and all edges
+     * to or from those vertices.
+     * 
+     * @param filter tested once on each vertex label
+     * @return number of vertices removed
+     */
+    public int removeIf(Predicate<? super L> filter);
+    
+    /**
+     * Merge weighted edges into this graph. Each edge s -> t of weight w in
+     * edges gives s -> t the weight combine(current weight or 0 if none, w);
+     * a combined weight of 0 removes the edge. Every label in edges is added
+     * as a vertex if missing. If any label is null, any weight is missing or
+     * negative, or any combined weight is negative, the graph is not modified.
+     * 
+     * @param edges map from source labels to their targets and weights >= 0
+     * @param combine combines the current and merged weight into a weight >= 0
+     * @return number of edges whose weight changed
+     * @throws IllegalArgumentException if a label is null, a weight is missing or
+     *         negative, or a combined weight is negative
+     */
+    public int merge(Map<L, ? extends Map<L, Integer>> edges, IntBinaryOperator combine);
+    
+}
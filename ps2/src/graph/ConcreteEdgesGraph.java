@@ -4,12 +4,19 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An implementation of Graph.
@@ -17,7 +24,7 @@ import java.util.Set;
  * <p>PS2 instructions: you MUST use the provided rep.
  * Used below
  */
-public class ConcreteEdgesGraph implements Graph<String> {
+public class ConcreteEdgesGraph implements BulkGraph<String> {
     
     private final Set<String> vertices = new HashSet<>();
     private final List<Edge> edges = new ArrayList<>();
@@ -94,6 +101,126 @@ public class ConcreteEdgesGraph implements Graph<String> {
         return true;
     }
     
+    /**
+     * Remove several vertices, and all edges to or from them, in one pass
+     * over the edges.
+     * 
+     * @param doomed labels of vertices to remove; labels not in this graph are ignored
+     * @return number of vertices removed
+     */
+    @Override
+    public int removeAll(Collection<String> doomed) {
+        Set<String> lookup = new HashSet<>(doomed);//constant time membership whatever the collection
+        return removeIf(lookup::contains);
+    }
+    
+    /**
+     * Remove every vertex whose label satisfies a predicate, and all edges
+     * to or from those vertices, in one pass over the edges.
+     * 
+     * @param filter tested once on each vertex label
+     * @return number of vertices removed
+     */
+    @Override
+    public int removeIf(Predicate<? super String> filter) {
+        Set<String> removed = new HashSet<>();
+        for (String vertex : vertices) {
+            if (filter.test(vertex)) {
+                removed.add(vertex);
+            }
+        }
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        vertices.removeAll(removed);
+        edges.removeIf(edge -> removed.contains(edge.source()) || removed.contains(edge.target()));
+        confirmrep();
+        return removed.size();
+    }
+    
+    /**
+     * Merge weighted edges into this graph in one pass over the edge list.
+     * Each edge s -> t of weight w in edges gives s -> t the weight
+     * combine(current weight or 0 if none, w); a combined weight of 0
+     * removes the edge. Every label in edges is added as a vertex if missing.
+     * 
+     * @param edges map from source labels to their targets and weights >= 0
+     * @param combine combines the current and merged weight into a weight >= 0
+     * @return number of edges whose weight changed
+     */
+    @Override
+    public int merge(Map<String, ? extends Map<String, Integer>> edges, IntBinaryOperator combine) {
+        for (Map.Entry<String, ? extends Map<String, Integer>> entry : edges.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new IllegalArgumentException("Label cannot be null.");
+            }
+            for (Map.Entry<String, Integer> edge : entry.getValue().entrySet()) {
+                if (edge.getKey() == null || edge.getValue() == null || edge.getValue() < 0) {
+                    throw new IllegalArgumentException("Invalid edge " + entry.getKey() + " -> " + edge.getKey());
+                }
+            }
+        }
+        Map<String, Map<String, Integer>> slots = new HashMap<>();//source -> target -> index in edges
+        for (int i = 0; i < this.edges.size(); i++) {
+            Edge edge = this.edges.get(i);
+            slots.computeIfAbsent(edge.source(), source -> new HashMap<>()).put(edge.target(), i);
+        }
+        //every combined weight is computed before anything is written, so a
+        //negative one leaves the graph unchanged; the second pass visits the
+        //edges in the same order
+        int count = 0;
+        for (Map<String, Integer> targets : edges.values()) {
+            count += targets.size();
+        }
+        int[] weights = new int[count];
+        int next = 0;
+        for (Map.Entry<String, ? extends Map<String, Integer>> entry : edges.entrySet()) {
+            Map<String, Integer> sourceSlots = slots.getOrDefault(entry.getKey(), Collections.emptyMap());
+            for (Map.Entry<String, Integer> edge : entry.getValue().entrySet()) {
+                Integer slot = sourceSlots.get(edge.getKey());
+                int previous = slot == null ? 0 : this.edges.get(slot).weight();
+                weights[next] = combine.applyAsInt(previous, edge.getValue());
+                if (weights[next++] < 0) {
+                    throw new IllegalArgumentException("Weight cannot be negative.");
+                }
+            }
+        }
+        int changed = 0;
+        boolean removed = false;
+        next = 0;
+        for (Map.Entry<String, ? extends Map<String, Integer>> entry : edges.entrySet()) {
+            String source = entry.getKey();
+            vertices.add(source);
+            Map<String, Integer> sourceSlots = slots.computeIfAbsent(source, s -> new HashMap<>());
+            for (Map.Entry<String, Integer> edge : entry.getValue().entrySet()) {
+                String target = edge.getKey();
+                vertices.add(target);
+                Integer slot = sourceSlots.get(target);
+                int previous = slot == null ? 0 : this.edges.get(slot).weight();
+                int weight = weights[next++];
+                if (weight == previous) {
+                    continue;
+                }
+                changed++;
+                if (slot == null) {
+                    sourceSlots.put(target, this.edges.size());
+                    this.edges.add(new Edge(source, target, weight));
+                } else if (weight == 0) {
+                    this.edges.set(slot, null);//dropped below, in one sweep
+                    sourceSlots.remove(target);
+                    removed = true;
+                } else {
+                    this.edges.set(slot, new Edge(source, target, weight));
+                }
+            }
+        }
+        if (removed) {
+            this.edges.removeIf(edge -> edge == null);
+        }
+        confirmrep();
+        return changed;
+    }
+    
     @Override 
     public Set<String> vertices() {
     	return Collections.unmodifiableSet(new HashSet<>(vertices));//immutable
@@ -121,6 +248,66 @@ public class ConcreteEdgesGraph implements Graph<String> {
          return Collections.unmodifiableMap(result);
     }
     
+    /**
+     * @return number of edges in this graph
+     */
+    @Override
+    public int edgeCount() {
+        return edges.size();
+    }
+    
+    /**
+     * Stream all edges of this graph without copying them into a collection.
+     * The stream splits evenly and knows its exact size, so parallel
+     * aggregations scale across cores. The graph must not be modified while
+     * the stream is in use.
+     * 
+     * @param parallel true for a parallel stream
+     * @return stream of every edge of this graph, once each
+     */
+    @Override
+    public Stream<WeightedEdge<String>> edges(boolean parallel) {
+        return StreamSupport.stream(new EdgeSpliterator(edges.spliterator()), parallel);
+    }
+    
+    /*
+     * Wraps the edge list's spliterator, which is SIZED and SUBSIZED,
+     * converting each Edge to a WeightedEdge as it is yielded.
+     */
+    private static class EdgeSpliterator implements Spliterator<WeightedEdge<String>> {
+        private final Spliterator<Edge> edges;
+        
+        EdgeSpliterator(Spliterator<Edge> edges) {
+            this.edges = edges;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super WeightedEdge<String>> action) {
+            return edges.tryAdvance(edge -> action.accept(new WeightedEdge<>(edge.source(), edge.target(), edge.weight())));
+        }
+        
+        @Override
+        public void forEachRemaining(Consumer<? super WeightedEdge<String>> action) {
+            edges.forEachRemaining(edge -> action.accept(new WeightedEdge<>(edge.source(), edge.target(), edge.weight())));
+        }
+        
+        @Override
+        public Spliterator<WeightedEdge<String>> trySplit() {
+            Spliterator<Edge> prefix = edges.trySplit();
+            return prefix == null ? null : new EdgeSpliterator(prefix);
+        }
+        
+        @Override
+        public long estimateSize() {
+            return edges.estimateSize();
+        }
+        
+        @Override
+        public int characteristics() {
+            return edges.characteristics() | NONNULL | DISTINCT;
+        }
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Graph:\nVertices: " + vertices + "\nEdges:\n");
@@ -4,14 +4,23 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class ConcreteVerticesGraph implements Graph<String> {//using string labels only
+public class ConcreteVerticesGraph implements BulkGraph<String> {//using string labels only
     
     private final List<Vertex> vertices = new ArrayList<>();
   
@@ -75,6 +84,93 @@ public class ConcreteVerticesGraph implements Graph<String> {//using string labe
          return true;
     }
     
+    /**
+     * Remove several vertices, and all edges to or from them, in one pass
+     * over the vertices.
+     * 
+     * @param doomed labels of vertices to remove; labels not in this graph are ignored
+     * @return number of vertices removed
+     */
+    @Override public int removeAll(Collection<String> doomed) {
+        Set<String> lookup = new HashSet<>(doomed);//constant time membership whatever the collection
+        return removeIf(lookup::contains);
+    }
+    
+    /**
+     * Remove every vertex whose label satisfies a predicate, and all edges
+     * to or from those vertices, in one pass over the vertices.
+     * 
+     * @param filter tested once on each vertex label
+     * @return number of vertices removed
+     */
+    @Override public int removeIf(Predicate<? super String> filter) {
+        Set<String> removed = new HashSet<>();
+        vertices.removeIf(v -> filter.test(v.getLabel()) && removed.add(v.getLabel()));
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        for (Vertex v : vertices) {
+            v.removeTargets(removed);
+        }
+        checkRep();
+        return removed.size();
+    }
+    
+    /**
+     * Merge weighted edges into this graph in one pass. Each edge s -> t of
+     * weight w in edges gives s -> t the weight combine(current weight or 0
+     * if none, w); a combined weight of 0 removes the edge. Every label in
+     * edges is added as a vertex if missing. The edges of different source
+     * vertices are merged in parallel.
+     * 
+     * @param edges map from source labels to their targets and weights >= 0
+     * @param combine combines the current and merged weight into a weight >= 0
+     * @return number of edges whose weight changed
+     */
+    @Override public int merge(Map<String, ? extends Map<String, Integer>> edges, IntBinaryOperator combine) {
+        Map<String, Vertex> byLabel = new HashMap<>();//one scan of the vertex list instead of one per edge
+        for (Vertex v : vertices) {
+            byLabel.put(v.getLabel(), v);
+        }
+        for (Map.Entry<String, ? extends Map<String, Integer>> entry : edges.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new IllegalArgumentException("Label cannot be null.");
+            }
+            for (Map.Entry<String, Integer> edge : entry.getValue().entrySet()) {
+                if (edge.getKey() == null || edge.getValue() == null || edge.getValue() < 0) {
+                    throw new IllegalArgumentException("Invalid edge " + entry.getKey() + " -> " + edge.getKey());
+                }
+            }
+        }
+        //new vertices are created aside and every combined weight is computed
+        //before anything is written, so invalid input leaves the graph unchanged
+        List<Vertex> added = new ArrayList<>();
+        for (Map.Entry<String, ? extends Map<String, Integer>> entry : edges.entrySet()) {
+            addIfMissing(byLabel, added, entry.getKey());
+            for (String target : entry.getValue().keySet()) {
+                addIfMissing(byLabel, added, target);
+            }
+        }
+        Map<String, Map<String, Integer>> changes = edges.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey,
+                        entry -> byLabel.get(entry.getKey()).changes(entry.getValue(), combine)));
+        vertices.addAll(added);
+        //each source vertex's target map is written by exactly one thread
+        int changed = changes.entrySet().parallelStream()
+                .mapToInt(entry -> byLabel.get(entry.getKey()).applyChanges(entry.getValue()))
+                .sum();
+        checkRep();
+        return changed;
+    }
+    
+    private static void addIfMissing(Map<String, Vertex> byLabel, List<Vertex> added, String label) {
+        if (!byLabel.containsKey(label)) {
+            Vertex vertex = new Vertex(label);
+            byLabel.put(label, vertex);
+            added.add(vertex);
+        }
+    }
+    
     @Override public Set<String> vertices() {
     	Set<String> vertexLabels = new HashSet<>();
         for (Vertex v : vertices) {
@@ -102,6 +198,94 @@ public class ConcreteVerticesGraph implements Graph<String> {//using string labe
          return Collections.unmodifiableMap(new HashMap<>(vertex.getTargets()));
     }
     
+    /**
+     * @return number of edges in this graph
+     */
+    @Override public int edgeCount() {
+        int count = 0;
+        for (Vertex v : vertices) {
+            count += v.getTargets().size();
+        }
+        return count;
+    }
+    
+    /**
+     * Stream all edges of this graph without copying them into a collection.
+     * The stream splits by ranges of source vertices and knows the exact
+     * size of every split, so parallel aggregations scale across cores. The
+     * graph must not be modified while the stream is in use.
+     * 
+     * @param parallel true for a parallel stream
+     * @return stream of every edge of this graph, once each
+     */
+    @Override public Stream<WeightedEdge<String>> edges(boolean parallel) {
+        long[] prefix = new long[vertices.size() + 1];//prefix[i] = edges out of vertices 0..i-1
+        for (int i = 0; i < vertices.size(); i++) {
+            prefix[i + 1] = prefix[i] + vertices.get(i).getTargets().size();
+        }
+        return StreamSupport.stream(new EdgeSpliterator(prefix, 0, vertices.size()), parallel);
+    }
+    
+    /*
+     * Edges out of the vertices in index range [index, fence), plus the rest
+     * of the vertex currently being traversed.
+     */
+    private class EdgeSpliterator implements Spliterator<WeightedEdge<String>> {
+        private final long[] prefix;
+        private int index;
+        private final int fence;
+        private Vertex current;
+        private Iterator<Map.Entry<String, Integer>> targets;
+        private long remainingInCurrent;
+        
+        EdgeSpliterator(long[] prefix, int index, int fence) {
+            this.prefix = prefix;
+            this.index = index;
+            this.fence = fence;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super WeightedEdge<String>> action) {
+            while (remainingInCurrent == 0) {
+                if (index >= fence) {
+                    return false;
+                }
+                current = vertices.get(index++);
+                targets = current.getTargets().entrySet().iterator();
+                remainingInCurrent = current.getTargets().size();
+            }
+            Map.Entry<String, Integer> edge = targets.next();
+            remainingInCurrent--;
+            action.accept(new WeightedEdge<>(current.getLabel(), edge.getKey(), edge.getValue()));
+            return true;
+        }
+        
+        @Override
+        public Spliterator<WeightedEdge<String>> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            EdgeSpliterator prefixHalf = new EdgeSpliterator(prefix, index, mid);
+            prefixHalf.current = current;
+            prefixHalf.targets = targets;
+            prefixHalf.remainingInCurrent = remainingInCurrent;
+            remainingInCurrent = 0;
+            index = mid;
+            return prefixHalf;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return prefix[fence] - prefix[index] + remainingInCurrent;
+        }
+        
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | NONNULL | DISTINCT;
+        }
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Graph:\n");
@@ -175,6 +359,69 @@ class Vertex {
 	        return previousWeight == null ? 0 : previousWeight;
 	    }
 
+	    /**
+	     * Combine weighted edges with this vertex's targets without modifying
+	     * this vertex.
+	     * 
+	     * @param edges targets and weights to merge
+	     * @param combine combines the current weight (0 if none) and the merged
+	     *        weight into a weight >= 0
+	     * @return the combined weight of every target whose weight would change,
+	     *         0 for a target whose edge would be removed
+	     * @throws IllegalArgumentException if a combined weight is negative
+	     */
+	    public Map<String, Integer> changes(Map<String, Integer> edges, IntBinaryOperator combine) {
+	        Map<String, Integer> changes = new HashMap<>();
+	        for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+	            Integer current = targets.get(edge.getKey());
+	            int previous = current == null ? 0 : current;
+	            int weight = combine.applyAsInt(previous, edge.getValue());
+	            if (weight < 0) {
+	                throw new IllegalArgumentException("Weight cannot be negative.");
+	            }
+	            if (weight != previous) {
+	                changes.put(edge.getKey(), weight);
+	            }
+	        }
+	        return changes;
+	    }
+
+	    /**
+	     * Set the weights of this vertex's targets; a weight of 0 removes the
+	     * edge.
+	     * 
+	     * @param changes targets and weights >= 0, as computed by changes()
+	     * @return number of targets written
+	     */
+	    public int applyChanges(Map<String, Integer> changes) {
+	        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+	            if (change.getValue() == 0) {
+	                targets.remove(change.getKey());
+	            } else {
+	                targets.put(change.getKey(), change.getValue());
+	            }
+	        }
+	        checkRep();
+	        return changes.size();
+	    }
+
+	    /**
+	     * Remove the edges to every label in a set, probing whichever of the
+	     * set and this vertex's targets is smaller.
+	     * 
+	     * @param labels labels of targets to remove
+	     */
+	    public void removeTargets(Set<String> labels) {
+	        if (targets.size() <= labels.size()) {
+	            targets.keySet().removeIf(labels::contains);
+	        } else {
+	            for (String target : labels) {
+	                targets.remove(target);
+	            }
+	        }
+	        checkRep();
+	    }
+
 	    @Override
 	    public String toString() {
 	        return label + " -> " + targets.toString();
@@ -0,0 +1,304 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of words, each mapped to a dense id 0..size()-1 by a
+ * minimal perfect hash function.
+ *
+ * <p>The words are stored back to back as UTF-8 in one byte array; no String
+ * is kept per word. {@link #id(CharSequence)} hashes the characters once,
+ * reads one displacement and one fingerprint to find the only slot the word
+ * can occupy, and confirms it by comparing bytes, so unknown words are
+ * rejected as well.
+ *
+ * <p>The hash function is built by hash-and-displace: words are grouped into
+ * small buckets, and buckets are placed largest first, each searching for a
+ * displacement that sends all its words to free slots.
+ */
+public final class FrozenVocabulary {
+
+    // average words per bucket; larger buckets mean less memory but slower builds
+    private static final int BUCKET_SIZE = 4;
+    private static final long STEP = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final int[] displacements;
+    private final short[] fingerprints;
+    private final int[] offsets;
+    private final byte[] utf8;
+
+    // Abstraction function:
+    //   represents the words w_0..w_{n-1}, n = offsets.length - 1, where w_i is
+    //   the UTF-8 decoding of utf8[offsets[i]..offsets[i+1]), and maps each w_i to id i
+    // Representation invariant:
+    //   the w_i are distinct
+    //   slot(w_i) == i, where slot(w) = position(hash(w), displacements[bucket(hash(w))])
+    //   fingerprints[i] == fingerprint(hash(w_i))
+    //   offsets is nondecreasing, offsets[0] == 0, offsets[n] == utf8.length
+    // Safety from rep exposure:
+    //   all arrays are private and never returned; labels are decoded into new Strings
+
+    private FrozenVocabulary(long seed, int[] displacements, short[] fingerprints, int[] offsets, byte[] utf8) {
+        this.seed = seed;
+        this.displacements = displacements;
+        this.fingerprints = fingerprints;
+        this.offsets = offsets;
+        this.utf8 = utf8;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert fingerprints.length == size();
+        assert offsets[0] == 0 && offsets[size()] == utf8.length;
+    }
+
+    /**
+     * Build a vocabulary.
+     *
+     * @param words distinct non-null words
+     * @return vocabulary of exactly those words
+     * @throws IllegalArgumentException if words contains duplicates
+     */
+    public static FrozenVocabulary of(Collection<String> words) {
+        List<String> list = new ArrayList<>(words);
+        for (long seed = 0x5DEECE66DL; ; seed = mix(seed + STEP)) {
+            FrozenVocabulary vocabulary = tryBuild(list, seed);
+            if (vocabulary != null) {
+                return vocabulary;
+            }
+        }
+    }
+
+    /*
+     * Build with one seed, or return null if two distinct words' 64-bit hashes collide.
+     */
+    private static FrozenVocabulary tryBuild(List<String> words, long seed) {
+        final int n = words.size();
+        final int bucketCount = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        long[] hashes = new long[n];
+        int[] bucketSizes = new int[bucketCount];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(words.get(i), seed);
+            bucketSizes[bucket(hashes[i], bucketCount)]++;
+        }
+
+        // group word indices by bucket
+        int[] bucketStart = new int[bucketCount + 1];
+        for (int b = 0; b < bucketCount; b++) {
+            bucketStart[b + 1] = bucketStart[b] + bucketSizes[b];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+        for (int i = 0; i < n; i++) {
+            members[fill[bucket(hashes[i], bucketCount)]++] = i;
+        }
+
+        // place buckets largest first
+        long[] order = new long[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[b] = ((long) (Integer.MAX_VALUE - bucketSizes[b]) << 32) | b;
+        }
+        Arrays.sort(order);
+        int[] displacements = new int[bucketCount];
+        int[] slotOwner = new int[n];
+        Arrays.fill(slotOwner, -1);
+        int[] slots = new int[BUCKET_SIZE * 8];
+        for (long packed : order) {
+            int b = (int) packed;
+            int size = bucketSizes[b];
+            if (size == 0) {
+                break; // sorted largest first, so only empty buckets remain
+            }
+            if (slots.length < size) {
+                slots = new int[size];
+            }
+            int d = 0;
+            while (true) {
+                boolean fits = true;
+                for (int j = 0; j < size && fits; j++) {
+                    int slot = position(hashes[members[bucketStart[b] + j]], d, n);
+                    if (slotOwner[slot] >= 0) {
+                        fits = false;
+                    }
+                    for (int k = 0; k < j && fits; k++) {
+                        if (slots[k] == slot) {
+                            int word = members[bucketStart[b] + j];
+                            int other = members[bucketStart[b] + k];
+                            if (hashes[word] == hashes[other]) {
+                                if (words.get(word).equals(words.get(other))) {
+                                    throw new IllegalArgumentException("Duplicate word: " + words.get(word));
+                                }
+                                return null; // identical hashes can never be separated
+                            }
+                            fits = false;
+                        }
+                    }
+                    slots[j] = slot;
+                }
+                if (fits) {
+                    break;
+                }
+                d++;
+            }
+            displacements[b] = d;
+            for (int j = 0; j < size; j++) {
+                slotOwner[slots[j]] = members[bucketStart[b] + j];
+            }
+        }
+
+        // lay out words in slot order
+        short[] fingerprints = new short[n];
+        int[] offsets = new int[n + 1];
+        byte[][] encoded = new byte[n][];
+        for (int slot = 0; slot < n; slot++) {
+            int word = slotOwner[slot];
+            encoded[slot] = words.get(word).getBytes(StandardCharsets.UTF_8);
+            fingerprints[slot] = fingerprint(hashes[word]);
+            offsets[slot + 1] = offsets[slot] + encoded[slot].length;
+        }
+        byte[] utf8 = new byte[offsets[n]];
+        for (int slot = 0; slot < n; slot++) {
+            System.arraycopy(encoded[slot], 0, utf8, offsets[slot], encoded[slot].length);
+        }
+        return new FrozenVocabulary(seed, displacements, fingerprints, offsets, utf8);
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Look up a word. Allocates nothing.
+     *
+     * @param word a word
+     * @return id of word, or -1 if it is not in this vocabulary
+     */
+    public int id(CharSequence word) {
+        final int n = size();
+        if (n == 0) {
+            return -1;
+        }
+        long h = hash(word, seed);
+        int slot = position(h, displacements[bucket(h, displacements.length)], n);
+        if (fingerprints[slot] != fingerprint(h) || !matches(word, slot)) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * @param id a word id, 0 <= id < size()
+     * @return the word with that id, as a new String
+     */
+    public String label(int id) {
+        return new String(utf8, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return all words, indexed by id; each access decodes a new String
+     */
+    public List<String> labels() {
+        return Collections.unmodifiableList(new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return label(index);
+            }
+
+            @Override
+            public int size() {
+                return FrozenVocabulary.this.size();
+            }
+        });
+    }
+
+    /**
+     * @return approximate heap bytes used by this vocabulary's arrays
+     */
+    public long byteSize() {
+        return utf8.length + 4L * offsets.length + 2L * fingerprints.length + 4L * displacements.length;
+    }
+
+    /*
+     * Compare word with the UTF-8 bytes stored in a slot, encoding on the fly.
+     * Unpaired surrogates are compared as '?', as String.getBytes encodes them.
+     */
+    private boolean matches(CharSequence word, int slot) {
+        int p = offsets[slot];
+        final int end = offsets[slot + 1];
+        for (int i = 0; i < word.length(); i++) {
+            int c = word.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < word.length()
+                    && Character.isLowSurrogate(word.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, word.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                c = '?';
+            }
+            int length = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (p + length > end) {
+                return false;
+            }
+            if (length == 1) {
+                if (utf8[p++] != c) {
+                    return false;
+                }
+                continue;
+            }
+            int lead = length == 2 ? 0xC0 : length == 3 ? 0xE0 : 0xF0;
+            if (utf8[p++] != (byte) (lead | (c >>> (6 * (length - 1))))) {
+                return false;
+            }
+            for (int shift = 6 * (length - 2); shift >= 0; shift -= 6) {
+                if (utf8[p++] != (byte) (0x80 | ((c >>> shift) & 0x3F))) {
+                    return false;
+                }
+            }
+        }
+        return p == end;
+    }
+
+    private static long hash(CharSequence word, long seed) {
+        long h = seed;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h ^ word.length());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int bucket(long hash, int bucketCount) {
+        return (int) (((hash >>> 32) * bucketCount) >>> 32);
+    }
+
+    private static int position(long hash, int displacement, int n) {
+        long z = mix(hash + displacement * STEP);
+        return (int) (((z >>> 32) * n) >>> 32);
+    }
+
+    private static short fingerprint(long hash) {
+        return (short) hash;
+    }
+
+    @Override
+    public String toString() {
+        return "FrozenVocabulary: " + size() + " words, " + byteSize() + " bytes";
+    }
+
+}
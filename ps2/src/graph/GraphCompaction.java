@@ -0,0 +1,247 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Pruning of light edges from a Graph to shrink it.
+ *
+ * <p>Compaction removes every edge lighter than a minimum weight, keeps only
+ * the k heaviest out-edges of each vertex, and then removes vertices left
+ * with no edges at all. It works on any Graph through its public operations;
+ * a BulkGraph is compacted in bulk, with one pass over its edges to choose
+ * the edges to remove, one merge to remove them and one removeIf to drop
+ * the orphans, rather than one set() per removed edge.
+ */
+public final class GraphCompaction {
+
+    private GraphCompaction() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Compact a graph in place.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to compact
+     * @param minWeight edges with weight below this are removed
+     * @param topK maximum number of out-edges kept per vertex (the heaviest
+     *        ones; ties broken arbitrarily), or Integer.MAX_VALUE for no limit; >= 1
+     * @return report of what was removed
+     */
+    @SuppressWarnings("unchecked")
+    public static <L> Report compact(Graph<L> graph, int minWeight, int topK) {
+        Pass<L> pass = new Pass<>(graph, minWeight, topK);
+        if (graph instanceof BulkGraph) {
+            pass.pruneAll((BulkGraph<L>) graph);
+            return pass.report();
+        }
+        for (L vertex : pass.vertices) {
+            pass.prune(vertex);
+        }
+        for (L vertex : pass.vertices) {
+            pass.removeIfOrphaned(vertex);
+        }
+        return pass.report();
+    }
+
+    /**
+     * Compact a live graph on a background thread. The graph is compacted one
+     * vertex at a time while holding lock, so writers that also synchronize
+     * on lock can keep mutating the graph in between; edges or vertices they
+     * add during the run may or may not be compacted.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to compact
+     * @param minWeight edges with weight below this are removed
+     * @param topK maximum number of out-edges kept per vertex, >= 1
+     * @param lock object that every user of graph synchronizes on
+     * @param executor executor to run the compaction on
+     * @return future report of what was removed
+     */
+    public static <L> Future<Report> compactInBackground(Graph<L> graph, int minWeight, int topK,
+            Object lock, ExecutorService executor) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("topK must be positive.");
+        }
+        return executor.submit(() -> {
+            Pass<L> pass;
+            synchronized (lock) {
+                pass = new Pass<>(graph, minWeight, topK);
+            }
+            for (L vertex : pass.vertices) {
+                synchronized (lock) {
+                    pass.prune(vertex);
+                }
+            }
+            for (L vertex : pass.vertices) {
+                synchronized (lock) {
+                    pass.removeIfOrphaned(vertex);
+                }
+            }
+            return pass.report();
+        });
+    }
+
+    /*
+     * One compaction run: the vertices present at the start, pruned one at a
+     * time, then the orphans among them removed one at a time. Each step only
+     * needs the graph to be stable while it runs. Alternatively pruneAll()
+     * does the whole run in bulk on a graph that is stable throughout.
+     */
+    private static class Pass<L> {
+        private final Graph<L> graph;
+        private final int minWeight;
+        private final int topK;
+        private final List<L> vertices;
+        private final Set<L> connected = new HashSet<>();
+        private int edgesBefore = 0;
+        private int edgesRemoved = 0;
+        private int verticesRemoved = 0;
+
+        Pass(Graph<L> graph, int minWeight, int topK) {
+            if (topK < 1) {
+                throw new IllegalArgumentException("topK must be positive.");
+            }
+            this.graph = graph;
+            this.minWeight = minWeight;
+            this.topK = topK;
+            this.vertices = new ArrayList<>(graph.vertices());
+        }
+
+        void prune(L vertex) {
+            for (L target : doomed(vertex, graph.targets(vertex))) {
+                graph.set(vertex, target, 0);
+            }
+        }
+
+        // every edge is read from one edge stream and every doomed edge removed
+        // by one merge to weight 0; with no concurrent writers, a vertex no kept
+        // edge touched has no edges left
+        void pruneAll(BulkGraph<L> bulk) {
+            Map<L, Map<L, Integer>> bySource = bulk.edges(false).collect(Collectors.groupingBy(
+                    WeightedEdge::source, Collectors.toMap(WeightedEdge::target, WeightedEdge::weight)));
+            Map<L, Map<L, Integer>> removals = new HashMap<>();
+            for (Map.Entry<L, Map<L, Integer>> entry : bySource.entrySet()) {
+                Map<L, Integer> zeros = new HashMap<>();
+                for (L target : doomed(entry.getKey(), entry.getValue())) {
+                    zeros.put(target, 0);
+                }
+                if (!zeros.isEmpty()) {
+                    removals.put(entry.getKey(), zeros);
+                }
+            }
+            bulk.merge(removals, (current, merged) -> merged);
+            verticesRemoved = bulk.removeIf(vertex -> !connected.contains(vertex));
+        }
+
+        // counts vertex's out-edges, records the ends of the kept ones, and
+        // returns the targets of the edges to remove
+        private List<L> doomed(L vertex, Map<L, Integer> targets) {
+            List<Map.Entry<L, Integer>> edges = new ArrayList<>(targets.entrySet());
+            edgesBefore += edges.size();
+            edges.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+            List<L> doomed = new ArrayList<>();
+            for (int i = 0; i < edges.size(); i++) {
+                Map.Entry<L, Integer> edge = edges.get(i);
+                if (i >= topK || edge.getValue() < minWeight) {
+                    doomed.add(edge.getKey());
+                } else {
+                    connected.add(vertex);
+                    connected.add(edge.getKey());
+                }
+            }
+            edgesRemoved += doomed.size();
+            return doomed;
+        }
+
+        // a vertex is orphaned if no kept edge touched it; recheck before removing
+        // in case a concurrent writer connected it since
+        void removeIfOrphaned(L vertex) {
+            if (!connected.contains(vertex) && graph.targets(vertex).isEmpty()
+                    && graph.sources(vertex).isEmpty() && graph.remove(vertex)) {
+                verticesRemoved++;
+            }
+        }
+
+        Report report() {
+            return new Report(vertices.size(), verticesRemoved, edgesBefore, edgesRemoved);
+        }
+    }
+
+    /**
+     * Immutable summary of one compaction.
+     */
+    public static final class Report {
+
+        private final int verticesBefore;
+        private final int verticesRemoved;
+        private final int edgesBefore;
+        private final int edgesRemoved;
+
+        // Rep invariant:
+        //   0 <= verticesRemoved <= verticesBefore, 0 <= edgesRemoved <= edgesBefore
+
+        Report(int verticesBefore, int verticesRemoved, int edgesBefore, int edgesRemoved) {
+            this.verticesBefore = verticesBefore;
+            this.verticesRemoved = verticesRemoved;
+            this.edgesBefore = edgesBefore;
+            this.edgesRemoved = edgesRemoved;
+            assert 0 <= verticesRemoved && verticesRemoved <= verticesBefore;
+            assert 0 <= edgesRemoved && edgesRemoved <= edgesBefore;
+        }
+
+        /** @return number of vertices before compaction */
+        public int verticesBefore() {
+            return verticesBefore;
+        }
+
+        /** @return number of orphaned vertices removed */
+        public int verticesRemoved() {
+            return verticesRemoved;
+        }
+
+        /** @return number of edges before compaction */
+        public int edgesBefore() {
+            return edgesBefore;
+        }
+
+        /** @return number of edges removed */
+        public int edgesRemoved() {
+            return edgesRemoved;
+        }
+
+        /**
+         * Share of the graph removed, counting vertices and edges alike. Each
+         * representation in this package holds one entry per vertex and per
+         * edge, so this is the share of the graph's entries freed; the bytes
+         * that frees depend on the representation, the labels and the JVM,
+         * and are not measured here.
+         *
+         * @return (verticesRemoved + edgesRemoved) / (verticesBefore + edgesBefore),
+         *         or 0 if the graph was empty
+         */
+        public double fractionRemoved() {
+            int before = verticesBefore + edgesBefore;
+            return before == 0 ? 0 : (double) (verticesRemoved + edgesRemoved) / before;
+        }
+
+        @Override
+        public String toString() {
+            return "Compaction: removed " + edgesRemoved + "/" + edgesBefore + " edges, "
+                    + verticesRemoved + "/" + verticesBefore + " vertices ("
+                    + Math.round(100 * fractionRemoved()) + "% of the graph)";
+        }
+    }
+
+}
@@ -0,0 +1,728 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * A Graph whose mutations are journaled to a directory, so that a live graph
+ * survives a crash.
+ *
+ * <p>Every successful add, set and remove is encoded as a compact binary
+ * record (an operation byte, varint-length UTF-8 labels, a varint weight)
+ * into an in-memory buffer. A background thread commits the buffer every
+ * commit interval as one checksummed frame appended to the journal file,
+ * followed by a single fsync, so many mutations share each fsync and the
+ * mutating thread never waits for the disk. A mutation is durable once the
+ * next commit, or a call to {@link #sync()}, has completed; a crash loses
+ * at most the mutations of the last commit interval, and a frame torn by a
+ * crash is detected by its checksum and discarded.
+ *
+ * <p>After every checkpoint interval of mutations the whole graph is written
+ * to a checkpoint file, in independently checksummed segments of vertices,
+ * and older journal files are deleted. {@link #open} loads the latest
+ * checkpoint and then replays the journals written after it, decoding
+ * checkpoint segments and journal frames in parallel and applying them in
+ * order.
+ *
+ * <p>Thread safe; operations are serialized. At most one JournaledGraph may
+ * use a directory at a time.
+ */
+public class JournaledGraph implements Graph<String>, Closeable {
+
+    private static final int CHECKPOINT_MAGIC = 0x47434B50;
+    private static final int JOURNAL_MAGIC = 0x474A4E4C;
+    private static final int JOURNAL_HEADER_BYTES = 12;
+    private static final byte ADD = 1;
+    private static final byte SET = 2;
+    private static final byte REMOVE = 3;
+    // vertices per checkpoint segment, the unit of parallel decoding
+    private static final int SEGMENT_VERTICES = 4096;
+    // commit early once this much is buffered, to bound memory under heavy ingestion
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+    private static final String CHECKPOINT = "checkpoint.bin";
+    private static final Pattern JOURNAL = Pattern.compile("journal-(\\d+)\\.log");
+
+    private final Graph<String> graph;
+    private final Path directory;
+    private final long checkpointInterval;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    // guarded by this
+    private ByteSink pending = new ByteSink();
+    private long mutationsSinceCheckpoint = 0;
+    private boolean commitRequested = false;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    // guarded by flushLock
+    private ByteSink spare = new ByteSink();
+    private FileChannel journal;
+    private long generation;
+
+    // Abstraction function:
+    //   represents the graph `graph`, whose state is also recorded by the
+    //   checkpoint in directory followed by the frames of journal files
+    //   journal-g.log, g >= the checkpoint's generation, followed by pending
+    // Representation invariant:
+    //   journal is open on directory/journal-<generation>.log, positioned at its end
+    //   pending holds only records of mutations already applied to graph
+    //   spare is empty outside a commit, whether or not the commit failed
+    //   once failure is set, nothing more is written to journal
+    // Safety from rep exposure:
+    //   graph, buffers and files are private and never returned; reads
+    //   return whatever the wrapped graph returns, which its spec makes safe
+
+    private JournaledGraph(Graph<String> graph, Path directory, FileChannel journal, long generation,
+            long commitIntervalMillis, long checkpointInterval) {
+        this.graph = graph;
+        this.directory = directory;
+        this.journal = journal;
+        this.generation = generation;
+        this.checkpointInterval = checkpointInterval;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "graph-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::backgroundCommit,
+                commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a journaled graph, recovering the state recorded in a directory.
+     *
+     * @param directory directory holding the checkpoint and journals; created
+     *                  if missing, and left empty means an empty graph
+     * @param empty an empty graph to hold the state; it must not be used
+     *              except through the returned object
+     * @param commitIntervalMillis milliseconds between group commits, > 0
+     * @param checkpointInterval mutations between checkpoints, > 0
+     * @return graph with the recovered state, journaling further mutations
+     * @throws IOException if the directory cannot be read or written, or its
+     *         checkpoint is corrupt
+     */
+    public static JournaledGraph open(Path directory, Graph<String> empty,
+            long commitIntervalMillis, long checkpointInterval) throws IOException {
+        if (!empty.vertices().isEmpty() || commitIntervalMillis <= 0 || checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Graph must be empty and intervals positive.");
+        }
+        Files.createDirectories(directory);
+        long generation = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            generation = loadCheckpoint(checkpoint, empty);
+        }
+        long newest = generation;
+        for (long g : journalGenerations(directory)) {
+            Path path = journalPath(directory, g);
+            if (g < generation) {
+                Files.delete(path); // already covered by the checkpoint
+                continue;
+            }
+            long valid = replayJournal(path, empty);
+            if (valid < Files.size(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid); // drop a torn tail before appending after it
+                }
+            }
+            newest = g;
+        }
+        return new JournaledGraph(empty, directory, openJournal(directory, newest), newest,
+                commitIntervalMillis, checkpointInterval);
+    }
+
+    /**
+     * Make every mutation so far durable before returning.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void sync() throws IOException {
+        commit();
+    }
+
+    /**
+     * Write a checkpoint of the current graph now and delete the journals it
+     * makes obsolete. Mutations wait only while the graph is encoded, not
+     * while the checkpoint is written.
+     *
+     * @throws IOException if the checkpoint or journal cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (flushLock) {
+            List<ByteSink> segments;
+            synchronized (this) {
+                checkUsable();
+                ByteSink batch = pending;
+                pending = spare;
+                spare = batch;
+                segments = encodeCheckpoint();
+                mutationsSinceCheckpoint = 0;
+            }
+            try {
+                // the journal up to here plus the old checkpoint equals the new checkpoint
+                writeFrame(journal, spare);
+                journal.force(false);
+                long next = generation + 1;
+                FileChannel nextJournal = openJournal(directory, next);
+                journal.close();
+                journal = nextJournal;
+                generation = next;
+                writeCheckpoint(segments, next);
+                for (long g : journalGenerations(directory)) {
+                    if (g < next) {
+                        Files.delete(journalPath(directory, g));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            } finally {
+                spare.reset();
+            }
+        }
+    }
+
+    /**
+     * Commit outstanding mutations, stop the background thread and close the
+     * journal. Later mutations throw IllegalStateException; reads still work.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (flushLock) {
+            try {
+                commit();
+            } finally {
+                synchronized (this) {
+                    closed = true;
+                }
+                journal.close();
+            }
+        }
+    }
+
+    @Override public synchronized boolean add(String vertex) {
+        checkUsable();
+        boolean added = graph.add(vertex);
+        if (added) {
+            pending.writeByte(ADD);
+            pending.writeString(vertex);
+            logged();
+        }
+        return added;
+    }
+
+    @Override public synchronized int set(String source, String target, int weight) {
+        checkUsable();
+        int previous = graph.set(source, target, weight);
+        if (previous != weight || weight == 0) {//weight 0 may still have added the vertices
+            pending.writeByte(SET);
+            pending.writeString(source);
+            pending.writeString(target);
+            pending.writeVarint(weight);
+            logged();
+        }
+        return previous;
+    }
+
+    @Override public synchronized boolean remove(String vertex) {
+        checkUsable();
+        boolean removed = graph.remove(vertex);
+        if (removed) {
+            pending.writeByte(REMOVE);
+            pending.writeString(vertex);
+            logged();
+        }
+        return removed;
+    }
+
+    @Override public synchronized Set<String> vertices() {
+        return graph.vertices();
+    }
+
+    @Override public synchronized Map<String, Integer> sources(String target) {
+        return graph.sources(target);
+    }
+
+    @Override public synchronized Map<String, Integer> targets(String source) {
+        return graph.targets(source);
+    }
+
+    /*
+     * Requires holding this.
+     */
+    private void checkUsable() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed.");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed; later mutations would be lost.", failure);
+        }
+    }
+
+    /*
+     * Count a mutation just recorded in pending. Requires holding this.
+     */
+    private void logged() {
+        mutationsSinceCheckpoint++;
+        if (pending.size() >= MAX_PENDING_BYTES && !commitRequested) {
+            commitRequested = true;
+            flusher.execute(this::backgroundCommit);
+        }
+    }
+
+    private void backgroundCommit() {
+        try {
+            commit();
+            boolean checkpointDue;
+            synchronized (this) {
+                checkpointDue = !closed && mutationsSinceCheckpoint >= checkpointInterval;
+            }
+            if (checkpointDue) {
+                checkpoint();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /*
+     * Record the first journal failure; every later mutation, commit and
+     * checkpoint then throws it. The journal may end in a torn frame, which
+     * recovery discards, so nothing may be appended after it.
+     */
+    private synchronized void fail(Exception e) {
+        if (failure == null) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    /*
+     * Append the pending records as one frame and fsync. Mutators only wait
+     * for the buffer swap, never for the disk.
+     */
+    private void commit() throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                commitRequested = false;
+                if (closed) {
+                    return;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                ByteSink batch = pending;
+                pending = spare;
+                spare = batch;
+            }
+            try {
+                writeFrame(journal, spare);
+                journal.force(false);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            } finally {
+                spare.reset(); // never swapped back into pending, even after a failure
+            }
+        }
+    }
+
+    /*
+     * Encode every vertex and its out-edges, SEGMENT_VERTICES vertices per
+     * segment. Requires holding this.
+     */
+    private List<ByteSink> encodeCheckpoint() {
+        List<String> labels = new ArrayList<>(graph.vertices());
+        List<ByteSink> segments = new ArrayList<>();
+        for (int start = 0; start < labels.size(); start += SEGMENT_VERTICES) {
+            int end = Math.min(labels.size(), start + SEGMENT_VERTICES);
+            ByteSink segment = new ByteSink();
+            segment.writeVarint(end - start);
+            for (String label : labels.subList(start, end)) {
+                Map<String, Integer> targets = graph.targets(label);
+                segment.writeString(label);
+                segment.writeVarint(targets.size());
+                for (Map.Entry<String, Integer> edge : targets.entrySet()) {
+                    segment.writeString(edge.getKey());
+                    segment.writeVarint(edge.getValue());
+                }
+            }
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /*
+     * Write a checkpoint beside the old one, then atomically replace it.
+     */
+    private void writeCheckpoint(List<ByteSink> segments, long generation) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(CHECKPOINT_MAGIC).putLong(generation).putInt(segments.size()).flip();
+            writeFully(channel, header);
+            for (ByteSink segment : segments) {
+                writeFrame(channel, segment);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true); // make the rename durable where the platform allows it
+        } catch (IOException e) {
+            // not every platform can open or sync a directory
+        }
+    }
+
+    /*
+     * Load a checkpoint into graph, decoding its segments in parallel.
+     * Returns the generation of the first journal written after it.
+     */
+    private static long loadCheckpoint(Path path, Graph<String> graph) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length < 16 || header.getInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a graph checkpoint: " + path);
+        }
+        long generation = header.getLong();
+        int count = header.getInt();
+        List<int[]> frames = frames(bytes, 16);
+        if (frames.size() != count || end(frames, 16) != bytes.length) {
+            throw new IOException("Truncated graph checkpoint: " + path);
+        }
+        List<List<Op>> segments = frames.parallelStream()
+                .map(frame -> decodeSegment(bytes, frame))
+                .collect(Collectors.toList());
+        if (segments.contains(null)) {
+            throw new IOException("Corrupt graph checkpoint: " + path);
+        }
+        for (List<Op> segment : segments) {
+            apply(segment, graph);
+        }
+        return generation;
+    }
+
+    /*
+     * Apply the intact frames of a journal to graph, decoding them in
+     * parallel. Returns the length of the intact prefix of the file.
+     */
+    private static long replayJournal(Path path, Graph<String> graph) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < JOURNAL_HEADER_BYTES) {
+            return 0; // crashed while creating it
+        }
+        if (ByteBuffer.wrap(bytes).getInt() != JOURNAL_MAGIC) {
+            throw new IOException("Not a graph journal: " + path);
+        }
+        List<int[]> frames = frames(bytes, JOURNAL_HEADER_BYTES);
+        List<List<Op>> batches = frames.parallelStream()
+                .map(frame -> decodeJournalFrame(bytes, frame))
+                .collect(Collectors.toList());
+        long valid = JOURNAL_HEADER_BYTES;
+        for (int i = 0; i < batches.size() && batches.get(i) != null; i++) {
+            apply(batches.get(i), graph);
+            valid = frames.get(i)[0] + frames.get(i)[1];
+        }
+        return valid;
+    }
+
+    /*
+     * Locate the frames of a file from offset on, stopping at a torn frame.
+     * Each frame is {payload offset, payload length, checksum}.
+     */
+    private static List<int[]> frames(byte[] bytes, int offset) {
+        List<int[]> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (offset + 8 <= bytes.length) {
+            int length = buffer.getInt(offset);
+            int checksum = buffer.getInt(offset + 4);
+            if (length < 0 || length > bytes.length - offset - 8) {
+                break;
+            }
+            frames.add(new int[] { offset + 8, length, checksum });
+            offset += 8 + length;
+        }
+        return frames;
+    }
+
+    private static int end(List<int[]> frames, int start) {
+        if (frames.isEmpty()) {
+            return start;
+        }
+        int[] last = frames.get(frames.size() - 1);
+        return last[0] + last[1];
+    }
+
+    private static boolean intact(byte[] bytes, int[] frame) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, frame[0], frame[1]);
+        return (int) crc.getValue() == frame[2];
+    }
+
+    /*
+     * Decode a checkpoint segment into adds and sets, or null if it is corrupt.
+     */
+    private static List<Op> decodeSegment(byte[] bytes, int[] frame) {
+        if (!intact(bytes, frame)) {
+            return null;
+        }
+        ByteSource in = new ByteSource(bytes, frame[0], frame[0] + frame[1]);
+        int vertices = in.readVarint();
+        List<Op> ops = new ArrayList<>(vertices);
+        for (int i = 0; i < vertices; i++) {
+            String label = in.readString();
+            ops.add(new Op(ADD, label, null, 0));
+            int degree = in.readVarint();
+            for (int j = 0; j < degree; j++) {
+                ops.add(new Op(SET, label, in.readString(), in.readVarint()));
+            }
+        }
+        return ops;
+    }
+
+    /*
+     * Decode a journal frame into its mutations, or null if it is corrupt.
+     */
+    private static List<Op> decodeJournalFrame(byte[] bytes, int[] frame) {
+        if (!intact(bytes, frame)) {
+            return null;
+        }
+        ByteSource in = new ByteSource(bytes, frame[0], frame[0] + frame[1]);
+        List<Op> ops = new ArrayList<>();
+        while (in.hasMore()) {
+            byte kind = in.readByte();
+            switch (kind) {
+            case ADD:
+            case REMOVE:
+                ops.add(new Op(kind, in.readString(), null, 0));
+                break;
+            case SET:
+                ops.add(new Op(kind, in.readString(), in.readString(), in.readVarint()));
+                break;
+            default:
+                return null;
+            }
+        }
+        return ops;
+    }
+
+    private static void apply(List<Op> ops, Graph<String> graph) {
+        for (Op op : ops) {
+            switch (op.kind) {
+            case ADD:
+                graph.add(op.source);
+                break;
+            case SET:
+                graph.set(op.source, op.target, op.weight);
+                break;
+            default:
+                graph.remove(op.source);
+                break;
+            }
+        }
+    }
+
+    private static Path journalPath(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    private static List<Long> journalGenerations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = JOURNAL.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /*
+     * Open a journal for appending, writing its header if it is new.
+     */
+    private static FileChannel openJournal(Path directory, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < JOURNAL_HEADER_BYTES) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES);
+            header.putInt(JOURNAL_MAGIC).putLong(generation).flip();
+            writeFully(channel, header);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static void writeFrame(FileChannel channel, ByteSink payload) throws IOException {
+        if (payload.size() == 0) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.bytes, 0, payload.size);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(payload.size).putInt((int) crc.getValue()).flip();
+        writeFully(channel, header);
+        writeFully(channel, ByteBuffer.wrap(payload.bytes, 0, payload.size));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Journaled " + graph;
+    }
+
+    /*
+     * One decoded mutation; target and weight are unused except for SET.
+     */
+    private static final class Op {
+        final byte kind;
+        final String source;
+        final String target;
+        final int weight;
+
+        Op(byte kind, String source, String target, int weight) {
+            this.kind = kind;
+            this.source = source;
+            this.target = target;
+            this.weight = weight;
+        }
+    }
+
+    /*
+     * Growable byte buffer with varint and string encoders.
+     */
+    private static final class ByteSink {
+        private byte[] bytes = new byte[4096];
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        /*
+         * Unsigned LEB128: seven bits per byte, low bits first.
+         */
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeString(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            if (size + utf8.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + utf8.length));
+            }
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+    }
+
+    /*
+     * Reader over a range of bytes written by ByteSink.
+     */
+    private static final class ByteSource {
+        private final byte[] bytes;
+        private int position;
+        private final int end;
+
+        ByteSource(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        byte readByte() {
+            return bytes[position++];
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() {
+            int length = readVarint();
+            String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+    }
+
+}
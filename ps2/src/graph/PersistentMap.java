@@ -0,0 +1,382 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map with structurally shared updates (a hash array mapped trie).
+ *
+ * <p>plus and minus return a new map that shares all but O(log n) nodes with
+ * this one, so old versions stay valid and cheap to keep. Reads (get,
+ * containsKey, size) allocate nothing. The java.util.Map mutators throw
+ * UnsupportedOperationException.
+ *
+ * <p>This class is internal to the rep of VersionedGraph.
+ *
+ * @param <K> type of keys, must be immutable
+ * @param <V> type of values, must be immutable
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    // Abstraction function:
+    //   represents the map of all key/value pairs stored in the trie under root
+    // Representation invariant:
+    //   root == null iff size == 0; size is the number of pairs under root
+    //   no node is mutated after it becomes reachable from a PersistentMap
+    //   keys are non-null and distinct
+    // Safety from rep exposure:
+    //   nodes are private and never returned; entries handed out are
+    //   immutable SimpleImmutableEntry objects
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key non-null key
+     * @param value non-null value
+     * @return a map equal to this one except that key maps to value; this
+     *         map itself if key already maps to that same value object
+     */
+    PersistentMap<K, V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node node = root == null ? BitmapNode.EMPTY : root;
+        Node updated = node.put(key, value, hash(key), 0, added);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key a key
+     * @return a map equal to this one without key; this map itself if it has no such key
+     */
+    PersistentMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node updated = root.remove(key, hash(key), 0);
+        if (updated == root) {
+            return this;
+        }
+        return updated == null ? empty() : new PersistentMap<>(updated, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null || key == null ? null : (V) root.get(key, hash(key), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new TrieIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * A trie node. Every operation returns the node itself when nothing
+     * changed, so callers can detect no-ops by identity.
+     */
+    private interface Node {
+        Object get(Object key, int hash, int shift);
+
+        Node put(Object key, Object value, int hash, int shift, boolean[] added);
+
+        /* returns null if the node became empty */
+        Node remove(Object key, int hash, int shift);
+    }
+
+    /*
+     * Interior node: array holds one pair per set bit of bitmap, either
+     * (key, value) or (null, child node).
+     */
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                return ((Node) v).get(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        public Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, 2 * i);
+                copy[2 * i] = key;
+                copy[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, copy, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, value, hash, shift + BITS, added);
+                return child == v ? this : with(i, null, child);
+            }
+            if (key.equals(k)) {
+                return value == v ? this : with(i, k, value);
+            }
+            added[0] = true;
+            return with(i, null, split(k, v, key, value, hash, shift + BITS));
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(key, hash, shift + BITS);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return with(i, null, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, copy, 2 * i, array.length - 2 * i - 2);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        private BitmapNode with(int i, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[2 * i] = key;
+            copy[2 * i + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        /*
+         * Node at the given shift holding two distinct keys that collided above it.
+         */
+        private static Node split(Object key1, Object value1, Object key2, Object value2,
+                int hash2, int shift) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY.put(key1, value1, hash1, shift, ignored)
+                    .put(key2, value2, hash2, shift, ignored);
+        }
+    }
+
+    /*
+     * Leaf holding (key, value) pairs whose full hashes are equal.
+     */
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            int i = hash == this.hash ? find(key) : -1;
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        public Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // push this node one level down beside the new key
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[] { null, this })
+                        .put(key, value, hash, shift, added);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift) {
+            int i = hash == this.hash ? find(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+    }
+
+    /*
+     * Depth-first iterator over the pairs of a trie.
+     */
+    private static final class TrieIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Map.Entry<K, V> next;
+
+        TrieIterator(Node root) {
+            if (root != null) {
+                push(root);
+            }
+            advance();
+        }
+
+        private void push(Node node) {
+            arrays.push(node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array);
+            positions.push(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null && !arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int i = positions.pop();
+                if (i >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(i + 2);
+                if (array[i] == null) {
+                    push((Node) array[i + 1]);
+                } else {
+                    next = new SimpleImmutableEntry<>((K) array[i], (V) array[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> result = next;
+            advance();
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A thread-safe Graph partitioned across independent sub-graphs.
+ *
+ * <p>Each vertex is owned by one shard, chosen by hashing its label, and each
+ * edge is stored in the shard that owns its source. Each shard has its own
+ * read-write lock, so operations on vertices in different shards run in
+ * parallel. add, set and targets touch only the owning shards; sources,
+ * vertices and remove visit every shard and merge. sources and vertices
+ * visit the shards in parallel once the graph is large enough for that to
+ * pay for the fan-out; remove, which holds every write lock, visits them in
+ * turn on the calling thread.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class ShardedGraph<L> implements Graph<L> {
+
+    /* Fewest shards for which sources() queries them in parallel. */
+    private static final int PARALLEL_SHARDS = 8;
+    /* Fewest estimated vertices for which vertices() reads the shards in parallel. */
+    private static final int PARALLEL_VERTICES = 8192;
+
+    private final List<Graph<L>> shards;
+    private final List<ReadWriteLock> locks;
+
+    // Abstraction function:
+    //   represents the graph whose vertices are the vertices v of
+    //   shards.get(shardOf(v)) that are owned by that shard, and whose edges
+    //   are the edges of all shards
+    // Representation invariant:
+    //   shards.size() == locks.size() >= 1
+    //   every edge s -> t of shards.get(i) has shardOf(s) == i, and t is a
+    //   vertex of shards.get(shardOf(t))
+    //   a vertex of shards.get(i) not owned by i is a target placeholder with
+    //   no out-edges and at least one in-edge
+    // Safety from rep exposure:
+    //   shards and locks are private and never returned; results are built
+    //   from copies returned by the shards
+    // Thread safety argument:
+    //   every access to shards.get(i) holds locks.get(i); operations that need
+    //   several write locks take them in increasing shard order
+
+    /**
+     * Create an empty sharded graph.
+     *
+     * @param shardCount number of shards, >= 1
+     * @param newShard supplier of new empty graphs; the graphs it returns
+     *        must not be shared with anything else
+     */
+    public ShardedGraph(int shardCount, Supplier<Graph<L>> newShard) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        List<Graph<L>> shards = new ArrayList<>(shardCount);
+        List<ReadWriteLock> locks = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(newShard.get());
+            locks.add(new ReentrantReadWriteLock());
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.locks = Collections.unmodifiableList(locks);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert shards.size() == locks.size() && !shards.isEmpty();
+    }
+
+    private int shardOf(Object vertex) {
+        int h = vertex.hashCode();
+        h ^= h >>> 16;
+        return Math.floorMod(h * 0x9E3779B9, shards.size());
+    }
+
+    @Override public boolean add(L vertex) {
+        if (vertex == null) {
+            return false;
+        }
+        int owner = shardOf(vertex);
+        locks.get(owner).writeLock().lock();
+        try {
+            return shards.get(owner).add(vertex);
+        } finally {
+            locks.get(owner).writeLock().unlock();
+        }
+    }
+
+    @Override public int set(L source, L target, int weight) {
+        if (source == null || target == null || weight < 0) {
+            throw new IllegalArgumentException("Invalid source, target, or weight.");
+        }
+        int sourceShard = shardOf(source);
+        int targetShard = shardOf(target);
+        int first = Math.min(sourceShard, targetShard);
+        int second = Math.max(sourceShard, targetShard);
+        locks.get(first).writeLock().lock();
+        if (second != first) {
+            locks.get(second).writeLock().lock();
+        }
+        try {
+            Graph<L> shard = shards.get(sourceShard);
+            if (weight == 0 && !shard.targets(source).containsKey(target)) {
+                return 0; // no such edge, and removing it must not add vertices
+            }
+            if (weight > 0 && targetShard != sourceShard) {
+                shards.get(targetShard).add(target);
+            }
+            int previous = shard.set(source, target, weight);
+            if (weight == 0) {
+                dropPlaceholder(sourceShard, target);
+            }
+            return previous;
+        } finally {
+            if (second != first) {
+                locks.get(second).writeLock().unlock();
+            }
+            locks.get(first).writeLock().unlock();
+        }
+    }
+
+    @Override public boolean remove(L vertex) {
+        if (vertex == null) {
+            return false;
+        }
+        int owner = shardOf(vertex);
+        for (ReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            // Graph has no membership test, and vertices() would copy the shard's
+            // vertex set: under the write lock, an add that succeeds is undone
+            Graph<L> shard = shards.get(owner);
+            if (shard.add(vertex)) {
+                shard.remove(vertex);
+                return false;
+            }
+            Set<L> targets = new HashSet<>(shard.targets(vertex).keySet());
+            // every shard may hold edges into vertex; only the calling thread holds
+            // the locks, so the shards are visited on it
+            for (Graph<L> each : shards) {
+                each.remove(vertex);
+            }
+            for (L target : targets) {
+                dropPlaceholder(owner, target);
+            }
+            return true;
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).writeLock().unlock();
+            }
+        }
+    }
+
+    /*
+     * Remove vertex from shard i if it is a placeholder there that has lost
+     * its last in-edge. Caller holds the write lock of shard i.
+     */
+    private void dropPlaceholder(int i, L vertex) {
+        Graph<L> shard = shards.get(i);
+        if (shardOf(vertex) != i && shard.sources(vertex).isEmpty()) {
+            shard.remove(vertex);
+        }
+    }
+
+    @Override public Set<L> vertices() {
+        // hashing spreads the vertices evenly, so shard 0 estimates the size of the rest
+        Set<L> first = owned(0);
+        IntStream rest = IntStream.range(1, shards.size());
+        if ((long) first.size() * shards.size() >= PARALLEL_VERTICES) {
+            rest = rest.parallel();
+        }
+        Set<L> result = rest.mapToObj(this::owned)
+                .flatMap(Set::stream)
+                .collect(Collectors.toCollection(() -> new HashSet<>(first)));
+        return Collections.unmodifiableSet(result);
+    }
+
+    /*
+     * Vertices owned by shard i, read under its read lock.
+     */
+    private Set<L> owned(int i) {
+        Set<L> owned = new HashSet<>();
+        for (L vertex : read(i, () -> shards.get(i).vertices())) {
+            if (shardOf(vertex) == i) {
+                owned.add(vertex);
+            }
+        }
+        return owned;
+    }
+
+    @Override public Map<L, Integer> sources(L target) {
+        IntStream all = IntStream.range(0, shards.size());
+        if (shards.size() >= PARALLEL_SHARDS) {
+            all = all.parallel();
+        }
+        Map<L, Integer> result = all
+                .mapToObj(i -> read(i, () -> shards.get(i).sources(target)))
+                .flatMap(sources -> sources.entrySet().stream())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, HashMap::new));
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override public Map<L, Integer> targets(L source) {
+        int owner = shardOf(source);
+        return read(owner, () -> shards.get(owner).targets(source));
+    }
+
+    /*
+     * Run a read of shard i under its read lock.
+     */
+    private <T> T read(int i, Supplier<T> reader) {
+        locks.get(i).readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            locks.get(i).readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ShardedGraph:\n");
+        for (int i = 0; i < shards.size(); i++) {
+            sb.append("Shard ").append(i).append(": ").append(read(i, shards.get(i)::toString)).append("\n");
+        }
+        return sb.toString();
+    }
+
+}
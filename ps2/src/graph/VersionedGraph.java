@@ -0,0 +1,258 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A Graph whose readers never see partially applied updates and never lock.
+ *
+ * <p>The graph is a sequence of immutable versions. Writers are serialized;
+ * each mutation, or each batch passed to {@link #update(Consumer)}, builds a
+ * new version by path-copying persistent adjacency maps, so its cost is
+ * proportional to the vertices it changes, and publishes it with a single
+ * atomic reference write. {@link #snapshot()} pins the current version
+ * without locking, and reads of a snapshot's targets and sources return the
+ * stored immutable maps directly.
+ *
+ * <p>The Graph operations on this object itself each act on the latest
+ * version; use a snapshot for several reads that must agree.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class VersionedGraph<L> implements Graph<L> {
+
+    private final AtomicReference<Snapshot<L>> current =
+            new AtomicReference<>(new Snapshot<>(0, PersistentMap.empty(), PersistentMap.empty()));
+    private final Object writeLock = new Object();
+
+    // Abstraction function:
+    //   represents the graph current.get()
+    // Representation invariant:
+    //   current.get() != null; versions published to current strictly increase
+    // Safety from rep exposure:
+    //   snapshots are immutable, so handing them out exposes nothing mutable
+
+    /**
+     * @return the latest version, which never changes afterwards
+     */
+    public Snapshot<L> snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Apply a batch of mutations atomically: readers see either none or all
+     * of them. The batch runs while holding the writer lock, against a
+     * private Graph view that only accepts mutations and reads of that
+     * working state.
+     *
+     * @param changes mutations to apply; must not retain the Graph it is given
+     * @return the version published (the old one if nothing changed)
+     */
+    public Snapshot<L> update(Consumer<Graph<L>> changes) {
+        synchronized (writeLock) {
+            Snapshot<L> base = current.get();
+            Writer<L> writer = new Writer<>(base);
+            changes.accept(writer);
+            Snapshot<L> next = writer.publishable();
+            if (next != base) {
+                current.set(next);
+            }
+            return next;
+        }
+    }
+
+    @Override public boolean add(L vertex) {
+        boolean[] result = new boolean[1];
+        update(g -> result[0] = g.add(vertex));
+        return result[0];
+    }
+
+    @Override public int set(L source, L target, int weight) {
+        int[] result = new int[1];
+        update(g -> result[0] = g.set(source, target, weight));
+        return result[0];
+    }
+
+    @Override public boolean remove(L vertex) {
+        boolean[] result = new boolean[1];
+        update(g -> result[0] = g.remove(vertex));
+        return result[0];
+    }
+
+    @Override public Set<L> vertices() {
+        return snapshot().vertices();
+    }
+
+    @Override public Map<L, Integer> sources(L target) {
+        return snapshot().sources(target);
+    }
+
+    @Override public Map<L, Integer> targets(L source) {
+        return snapshot().targets(source);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * One immutable version of a VersionedGraph. Mutators throw
+     * UnsupportedOperationException.
+     *
+     * @param <L> type of vertex labels
+     */
+    public static final class Snapshot<L> implements Graph<L> {
+
+        private final long version;
+        private final PersistentMap<L, PersistentMap<L, Integer>> out;
+        private final PersistentMap<L, PersistentMap<L, Integer>> in;
+
+        // Abstraction function:
+        //   represents the graph with vertex set out.keySet() and an edge
+        //   s -> t of weight out.get(s).get(t) for each such entry
+        // Representation invariant:
+        //   out.keySet() equals in.keySet()
+        //   out.get(s).get(t) == in.get(t).get(s) for every edge, and all weights > 0
+        // Safety from rep exposure:
+        //   persistent maps are immutable, so they are returned directly
+
+        private Snapshot(long version, PersistentMap<L, PersistentMap<L, Integer>> out,
+                PersistentMap<L, PersistentMap<L, Integer>> in) {
+            this.version = version;
+            this.out = out;
+            this.in = in;
+            assert out.size() == in.size();
+        }
+
+        /**
+         * @return number of this version; later versions have larger numbers
+         */
+        public long version() {
+            return version;
+        }
+
+        @Override public boolean add(L vertex) {
+            throw new UnsupportedOperationException("Snapshots are immutable.");
+        }
+
+        @Override public int set(L source, L target, int weight) {
+            throw new UnsupportedOperationException("Snapshots are immutable.");
+        }
+
+        @Override public boolean remove(L vertex) {
+            throw new UnsupportedOperationException("Snapshots are immutable.");
+        }
+
+        @Override public Set<L> vertices() {
+            return Collections.unmodifiableSet(out.keySet());
+        }
+
+        @Override public Map<L, Integer> sources(L target) {
+            PersistentMap<L, Integer> sources = in.get(target);
+            return sources == null ? PersistentMap.empty() : sources;
+        }
+
+        @Override public Map<L, Integer> targets(L source) {
+            PersistentMap<L, Integer> targets = out.get(source);
+            return targets == null ? PersistentMap.empty() : targets;
+        }
+
+        @Override
+        public String toString() {
+            return "Graph version " + version + ": " + out;
+        }
+    }
+
+    /*
+     * Working state of one update: persistent maps are replaced, never
+     * modified, so the base snapshot stays intact.
+     */
+    private static final class Writer<L> implements Graph<L> {
+        private final Snapshot<L> base;
+        private PersistentMap<L, PersistentMap<L, Integer>> out;
+        private PersistentMap<L, PersistentMap<L, Integer>> in;
+
+        Writer(Snapshot<L> base) {
+            this.base = base;
+            this.out = base.out;
+            this.in = base.in;
+        }
+
+        Snapshot<L> publishable() {
+            if (out == base.out && in == base.in) {
+                return base;
+            }
+            return new Snapshot<>(base.version + 1, out, in);
+        }
+
+        @Override public boolean add(L vertex) {
+            if (vertex == null || out.containsKey(vertex)) {
+                return false;
+            }
+            out = out.plus(vertex, PersistentMap.empty());
+            in = in.plus(vertex, PersistentMap.empty());
+            return true;
+        }
+
+        @Override public int set(L source, L target, int weight) {
+            if (source == null || target == null || weight < 0) {
+                throw new IllegalArgumentException("Invalid source, target, or weight.");
+            }
+            PersistentMap<L, Integer> targets = out.get(source);
+            Integer previous = targets == null ? null : targets.get(target);
+            if (previous != null && previous.intValue() == weight) {
+                return weight; // unchanged: copy no paths, publish no version
+            }
+            if (weight == 0) {
+                if (previous != null) {
+                    out = out.plus(source, targets.minus(target));
+                    in = in.plus(target, in.get(target).minus(source));
+                }
+            } else {
+                add(source);
+                add(target);
+                out = out.plus(source, out.get(source).plus(target, weight));
+                in = in.plus(target, in.get(target).plus(source, weight));
+            }
+            return previous == null ? 0 : previous;
+        }
+
+        @Override public boolean remove(L vertex) {
+            PersistentMap<L, Integer> targets = out.get(vertex);
+            if (targets == null) {
+                return false;
+            }
+            for (L target : targets.keySet()) {
+                in = in.plus(target, in.get(target).minus(vertex));
+            }
+            for (L source : in.get(vertex).keySet()) {
+                out = out.plus(source, out.get(source).minus(vertex));
+            }
+            out = out.minus(vertex);
+            in = in.minus(vertex);
+            return true;
+        }
+
+        @Override public Set<L> vertices() {
+            return Collections.unmodifiableSet(out.keySet());
+        }
+
+        @Override public Map<L, Integer> sources(L target) {
+            PersistentMap<L, Integer> sources = in.get(target);
+            return sources == null ? PersistentMap.empty() : sources;
+        }
+
+        @Override public Map<L, Integer> targets(L source) {
+            PersistentMap<L, Integer> targets = out.get(source);
+            return targets == null ? PersistentMap.empty() : targets;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+/**
+ * An immutable weighted directed edge, as yielded by the edge streams of
+ * the concrete graphs.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class WeightedEdge<L> {
+
+    private final L source;
+    private final L target;
+    private final int weight;
+
+    // Rep invariant:
+    //   source and target are non-null, weight > 0
+    // Safety from rep exposure:
+    //   all fields are private, final and immutable
+
+    /**
+     * @param source label of the source vertex, non-null
+     * @param target label of the target vertex, non-null
+     * @param weight weight of the edge, > 0
+     */
+    public WeightedEdge(L source, L target, int weight) {
+        if (source == null || target == null || weight <= 0) {
+            throw new IllegalArgumentException("Invalid edge parameters.");
+        }
+        this.source = source;
+        this.target = target;
+        this.weight = weight;
+    }
+
+    /** @return label of the source vertex */
+    public L source() {
+        return source;
+    }
+
+    /** @return label of the target vertex */
+    public L target() {
+        return target;
+    }
+
+    /** @return weight of the edge */
+    public int weight() {
+        return weight;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof WeightedEdge)) return false;
+        WeightedEdge<?> other = (WeightedEdge<?>) obj;
+        return source.equals(other.source) && target.equals(other.target) && weight == other.weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return (source.hashCode() * 31 + target.hashCode()) * 31 + weight;
+    }
+
+    @Override
+    public String toString() {
+        return source + " -> " + target + " (weight: " + weight + ")";
+    }
+
+}
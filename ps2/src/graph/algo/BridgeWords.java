@@ -0,0 +1,210 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Heaviest two-edge paths, found by intersecting sorted adjacency arrays.
+ *
+ * <p>The bridges from u to w are targets(u) intersected with sources(w).
+ * When the two lists have similar lengths they are merged in id order.
+ * Otherwise the shorter list is visited heaviest first, each candidate is
+ * looked up by binary search in the longer one, and the scan stops as soon
+ * as the current edge plus the heaviest edge on the other side cannot beat
+ * the best bridge so far. Hub words like "the" therefore cost a handful of
+ * lookups instead of a scan of their whole neighborhood. Compressed graphs
+ * cannot be probed by binary search, so their lists are always merged.
+ *
+ * <p>A bridge's score may include a bonus on top of the two edge weights,
+ * e.g. from a context model, as long as the bonus is bounded by a multiple
+ * of those weights; the early exit then scales the remaining edges by the
+ * same multiple.
+ */
+public final class BridgeWords {
+
+    // merge when the longer list is at most this many times the shorter one
+    private static final int MERGE_RATIO = 8;
+
+    private static final IntToLongFunction NO_BONUS = bridge -> 0;
+
+    private BridgeWords() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Find the bridge b maximizing weight(u, b) + weight(b, w) over all
+     * two-edge paths u -> b -> w.
+     *
+     * @param graph graph to search
+     * @param u id of the first vertex
+     * @param w id of the last vertex
+     * @return id of the best bridge, the smallest such id if several tie, or
+     *         -1 if there is no two-edge path from u to w
+     */
+    public static int best(IndexedGraph<?> graph, int u, int w) {
+        return best(graph, u, w, NO_BONUS, 0);
+    }
+
+    /**
+     * Find the bridge b maximizing weight(u, b) + weight(b, w) + bonus(b)
+     * over all two-edge paths u -> b -> w. The bonus must be bounded by the
+     * edge weights, so the heaviest-first search can still stop early.
+     *
+     * @param graph graph to search
+     * @param u id of the first vertex
+     * @param w id of the last vertex
+     * @param bonus extra score of each bridge id, >= 0 and at most
+     *        maxBonusPerWeight * (weight(u, b) + weight(b, w))
+     * @param maxBonusPerWeight bound on the bonus per unit of edge weight, >= 0
+     * @return id of the best bridge, the smallest such id if several tie, or
+     *         -1 if there is no two-edge path from u to w
+     */
+    public static int best(IndexedGraph<?> graph, int u, int w, IntToLongFunction bonus, int maxBonusPerWeight) {
+        int out = graph.outDegree(u);
+        int in = graph.inDegree(w);
+        if (out == 0 || in == 0) {
+            return -1;
+        }
+        if (Math.max(out, in) <= MERGE_RATIO * Math.min(out, in)) {
+            return merge(graph, u, w, bonus);
+        }
+        long factor = 1L + maxBonusPerWeight;
+        return out <= in ? boundedFromSource(graph, u, w, bonus, factor) : boundedFromTarget(graph, u, w, bonus, factor);
+    }
+
+    /**
+     * Find the bridge b maximizing weight(u, b) + weight(b, w) over all
+     * two-edge paths u -> b -> w in a compressed graph, by merging the two
+     * adjacency lists as they are decoded.
+     *
+     * @param graph graph to search
+     * @param u id of the first vertex
+     * @param w id of the last vertex
+     * @return id of the best bridge, the smallest such id if several tie, or
+     *         -1 if there is no two-edge path from u to w
+     */
+    public static int best(CompressedGraph<?> graph, int u, int w) {
+        return best(graph, u, w, NO_BONUS);
+    }
+
+    /**
+     * Find the bridge b maximizing weight(u, b) + weight(b, w) + bonus(b)
+     * over all two-edge paths u -> b -> w in a compressed graph, by merging
+     * the two adjacency lists as they are decoded.
+     *
+     * @param graph graph to search
+     * @param u id of the first vertex
+     * @param w id of the last vertex
+     * @param bonus extra score of each bridge id, >= 0
+     * @return id of the best bridge, the smallest such id if several tie, or
+     *         -1 if there is no two-edge path from u to w
+     */
+    public static int best(CompressedGraph<?> graph, int u, int w, IntToLongFunction bonus) {
+        CompressedGraph.Cursor out = graph.outCursor(new CompressedGraph.Cursor(), u);
+        CompressedGraph.Cursor in = graph.inCursor(new CompressedGraph.Cursor(), w);
+        int best = -1;
+        long bestWeight = 0;
+        boolean more = out.next() && in.next();
+        while (more) {
+            if (out.id < in.id) {
+                more = out.next();
+            } else if (out.id > in.id) {
+                more = in.next();
+            } else {
+                long total = (long) out.weight + in.weight + bonus.applyAsLong(out.id);
+                if (total > bestWeight) {
+                    bestWeight = total;
+                    best = out.id;
+                }
+                more = out.next() && in.next();
+            }
+        }
+        return best;
+    }
+
+    private static int merge(IndexedGraph<?> graph, int u, int w, IntToLongFunction bonus) {
+        int i = graph.outOffsets[u];
+        int iEnd = graph.outOffsets[u + 1];
+        int j = graph.inOffsets[w];
+        int jEnd = graph.inOffsets[w + 1];
+        int best = -1;
+        long bestWeight = 0;
+        while (i < iEnd && j < jEnd) {
+            int a = graph.outTargets[i];
+            int b = graph.inSources[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                long total = (long) graph.outWeights[i] + graph.inWeights[j] + bonus.applyAsLong(a);
+                if (total > bestWeight) {
+                    bestWeight = total;
+                    best = a;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Visit u's out-edges heaviest first, probing w's sorted sources.
+     * factor * (edge weights) bounds the score of a bridge.
+     */
+    private static int boundedFromSource(IndexedGraph<?> graph, int u, int w, IntToLongFunction bonus, long factor) {
+        int from = graph.inOffsets[w];
+        int to = graph.inOffsets[w + 1];
+        long maxIn = graph.heaviestSourceWeight(w, 0);
+        int best = -1;
+        long bestWeight = 0;
+        for (int i = 0; i < graph.outDegree(u); i++) {
+            long first = graph.heaviestTargetWeight(u, i);
+            if ((first + maxIn) * factor < bestWeight) {
+                break; // lighter edges follow, so nothing later can win
+            }
+            int candidate = graph.heaviestTarget(u, i);
+            int k = Arrays.binarySearch(graph.inSources, from, to, candidate);
+            if (k >= 0) {
+                long total = first + graph.inWeights[k] + bonus.applyAsLong(candidate);
+                if (total > bestWeight || (total == bestWeight && candidate < best)) {
+                    bestWeight = total;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Visit w's in-edges heaviest first, probing u's sorted targets.
+     */
+    private static int boundedFromTarget(IndexedGraph<?> graph, int u, int w, IntToLongFunction bonus, long factor) {
+        int from = graph.outOffsets[u];
+        int to = graph.outOffsets[u + 1];
+        long maxOut = graph.heaviestTargetWeight(u, 0);
+        int best = -1;
+        long bestWeight = 0;
+        for (int i = 0; i < graph.inDegree(w); i++) {
+            long second = graph.heaviestSourceWeight(w, i);
+            if ((second + maxOut) * factor < bestWeight) {
+                break;
+            }
+            int candidate = graph.heaviestSource(w, i);
+            int k = Arrays.binarySearch(graph.outTargets, from, to, candidate);
+            if (k >= 0) {
+                long total = graph.outWeights[k] + second + bonus.applyAsLong(candidate);
+                if (total > bestWeight || (total == bestWeight && candidate < best)) {
+                    bestWeight = total;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,504 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import graph.Graph;
+
+/**
+ * An immutable Graph with vertices numbered 0..size()-1 whose adjacency
+ * lists are compressed to a few bytes per edge. Mutators throw
+ * UnsupportedOperationException.
+ *
+ * <p>Each vertex's out-edges are stored, sorted by target id, as a byte
+ * sequence: the degree as a varint, then one varint code per edge. The code
+ * holds the gap from the previous target (the first target is stored
+ * relative to the vertex itself, zigzag-encoded, since neighbors tend to
+ * have nearby ids) shifted left by two bits, and the weight in the low two
+ * bits when it is 1, 2 or 3; heavier edges set both bits and follow the
+ * code with a varint of the excess weight. Word adjacency counts are
+ * dominated by small weights, so most edges cost one or two bytes. In-edges
+ * are stored the same way by source id. Where each list starts is stored
+ * as a 16-bit offset from the start of its block of up to 64 vertices, so
+ * locating a list costs about two bytes per vertex rather than four.
+ *
+ * <p>Adjacency lists are decoded sequentially by a cursor; {@link BridgeWords}
+ * intersects two of them without materializing either.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class CompressedGraph<L> implements Graph<L> {
+
+    private static final int SMALL_WEIGHTS = 3;
+    private static final int MAX_BLOCK_SHIFT = 6;
+    private static final int MAX_BYTES = Integer.MAX_VALUE - 8; // largest array every JVM allocates
+
+    private final List<L> labels;
+    private final ToIntFunction<? super L> ids;
+    private final int edgeCount;
+    final Lists out;
+    final Lists in;
+
+    // Abstraction function:
+    //   represents the graph with vertices labels.get(0..n-1), n = labels.size(),
+    //   and an edge i -> t of weight w for every (t, w) decoded from list i of
+    //   out; in holds the same edges listed by target
+    // Representation invariant:
+    //   ids.applyAsInt(labels.get(i)) == i for all i, and ids returns -1 for
+    //     every other non-null label
+    //   out and in hold n lists each
+    //   each list decodes to strictly increasing ids in 0..n-1 and positive weights
+    //   edgeCount == total out-degree == total in-degree
+    // Safety from rep exposure:
+    //   labels is unmodifiable and ids is shared with the immutable
+    //   IndexedGraph this was built from; the lists are package-private and only
+    //   read by the algorithms in this package; targets() and sources()
+    //   return new unmodifiable maps
+
+    private CompressedGraph(List<L> labels, ToIntFunction<? super L> ids, int edgeCount, Lists out, Lists in) {
+        this.labels = labels;
+        this.ids = ids;
+        this.edgeCount = edgeCount;
+        this.out = out;
+        this.in = in;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert out.lows.length == labels.size() && in.lows.length == labels.size();
+    }
+
+    /**
+     * Compress a graph, numbering vertices in iteration order of graph.vertices().
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @return compressed snapshot of graph
+     */
+    public static <L> CompressedGraph<L> of(Graph<L> graph) {
+        return of(IndexedGraph.of(graph));
+    }
+
+    /**
+     * Compress a graph with a given vertex numbering.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @param order every vertex of graph exactly once; vertex order.get(i) gets id i
+     * @return compressed snapshot of graph
+     * @throws IllegalArgumentException if order is not a permutation of graph.vertices()
+     */
+    public static <L> CompressedGraph<L> of(Graph<L> graph, List<L> order) {
+        return of(IndexedGraph.of(graph, order));
+    }
+
+    /**
+     * Compress an indexed graph, keeping its vertex numbering. The copy
+     * shares the labels and label lookup of graph rather than copying them.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @return compressed copy of graph
+     */
+    public static <L> CompressedGraph<L> of(IndexedGraph<L> graph) {
+        return new CompressedGraph<>(graph.labels(), graph.ids, graph.edgeCount(),
+                Lists.encode(graph.outOffsets, graph.outTargets, graph.outWeights),
+                Lists.encode(graph.inOffsets, graph.inSources, graph.inWeights));
+    }
+
+    /**
+     * The compressed adjacency lists of every vertex in one direction.
+     */
+    static final class Lists {
+        final byte[] bytes;
+        private final int shift;
+        private final int[] blocks;
+        private final char[] lows;
+
+        // Abstraction function:
+        //   list v is the byte sequence starting at bytes[offset(v)]
+        // Representation invariant:
+        //   lists are stored back to back in vertex order, each at least one byte long
+        //   lows[v] == 0 for the first vertex v of each block of 2^shift vertices
+
+        private Lists(byte[] bytes, int shift, int[] blocks, char[] lows) {
+            this.bytes = bytes;
+            this.shift = shift;
+            this.blocks = blocks;
+            this.lows = lows;
+        }
+
+        int offset(int v) {
+            return blocks[v >>> shift] + lows[v];
+        }
+
+        /*
+         * Length of list v, read from the varint that starts it.
+         */
+        int degree(int v) {
+            int position = offset(v);
+            int degree = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                degree |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return degree;
+                }
+            }
+        }
+
+        long byteSize() {
+            return bytes.length + 4L * blocks.length + 2L * lows.length;
+        }
+
+        /*
+         * Encode CSR adjacency lists, then pick the largest block size whose
+         * blocks all span less than 64KiB.
+         */
+        static Lists encode(int[] offsets, int[] neighbors, int[] weights) {
+            final int n = offsets.length - 1;
+            int[] starts = new int[n];
+            byte[] bytes = encodeLists(offsets, neighbors, weights, starts);
+            int shift = MAX_BLOCK_SHIFT;
+            while (shift > 0 && !fits(starts, shift)) {
+                shift--;
+            }
+            int[] blocks = new int[(n >>> shift) + 1];
+            char[] lows = new char[n];
+            for (int v = 0; v < n; v++) {
+                if ((v & ((1 << shift) - 1)) == 0) {
+                    blocks[v >>> shift] = starts[v];
+                }
+                lows[v] = (char) (starts[v] - blocks[v >>> shift]);
+            }
+            return new Lists(bytes, shift, blocks, lows);
+        }
+
+        private static boolean fits(int[] starts, int shift) {
+            for (int v = 0; v < starts.length; v++) {
+                if (starts[v] - starts[v & ~((1 << shift) - 1)] > Character.MAX_VALUE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * Encode CSR adjacency lists, filling starts with where each begins.
+     */
+    private static byte[] encodeLists(int[] offsets, int[] neighbors, int[] weights, int[] starts) {
+        byte[] bytes = new byte[(int) Math.min(MAX_BYTES, Math.max(16, 2L * neighbors.length + offsets.length))];
+        int position = 0;
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            starts[v] = position;
+            // worst case: 5 bytes of degree, 10 of code and 5 of excess weight per edge;
+            // only near the array limit is the list's exact length worth computing
+            long needed = position + 5 + 15L * (offsets[v + 1] - offsets[v]);
+            if (needed > MAX_BYTES) {
+                needed = position + encodeList(null, 0, v, offsets, neighbors, weights);
+                if (needed > MAX_BYTES) {
+                    throw new IllegalArgumentException("Adjacency lists need more than "
+                            + MAX_BYTES + " bytes; the graph is too large to compress.");
+                }
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_BYTES, Math.max(2L * bytes.length, needed)));
+            }
+            position = (int) encodeList(bytes, position, v, offsets, neighbors, weights);
+        }
+        return Arrays.copyOf(bytes, position);
+    }
+
+    /*
+     * Write list v at bytes[position], or if bytes is null only measure it;
+     * returns the position after it.
+     */
+    private static long encodeList(byte[] bytes, long position, int v, int[] offsets, int[] neighbors, int[] weights) {
+        position = writeVarint(bytes, position, offsets[v + 1] - offsets[v]);
+        long previous = v;
+        for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+            long gap = k == offsets[v]
+                    ? zigzag(neighbors[k] - previous)
+                    : neighbors[k] - previous - 1;
+            int small = Math.min(weights[k], SMALL_WEIGHTS + 1) - 1;
+            position = writeVarint(bytes, position, gap << 2 | small);
+            if (small == SMALL_WEIGHTS) {
+                position = writeVarint(bytes, position, weights[k] - SMALL_WEIGHTS - 1);
+            }
+            previous = neighbors[k];
+        }
+        return position;
+    }
+
+    private static long zigzag(long delta) {
+        return (delta << 1) ^ (delta >> 63);
+    }
+
+    // writes nothing if bytes is null
+    private static long writeVarint(byte[] bytes, long position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            if (bytes != null) {
+                bytes[(int) position] = (byte) ((value & 0x7F) | 0x80);
+            }
+            position++;
+            value >>>= 7;
+        }
+        if (bytes != null) {
+            bytes[(int) position] = (byte) value;
+        }
+        return position + 1;
+    }
+
+    /**
+     * Sequential decoder of one adjacency list. Reusable: reset it onto
+     * another list instead of allocating a new one.
+     */
+    static final class Cursor {
+        private byte[] bytes;
+        private int position;
+        private int remaining;
+        private long previous;
+        private boolean first;
+        /** id of the current neighbor, valid after next() returns true */
+        int id;
+        /** weight of the edge to the current neighbor, valid after next() returns true */
+        int weight;
+
+        /*
+         * Position on the list of vertex v starting at bytes[offset].
+         */
+        Cursor reset(byte[] bytes, int offset, int v) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.remaining = (int) readVarint();
+            this.previous = v;
+            this.first = true;
+            return this;
+        }
+
+        int remaining() {
+            return remaining;
+        }
+
+        boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            long code = readVarint();
+            long gap = code >>> 2;
+            id = (int) (first ? previous + ((gap >>> 1) ^ -(gap & 1)) : previous + gap + 1);
+            first = false;
+            previous = id;
+            int small = (int) code & 3;
+            weight = small == SMALL_WEIGHTS ? (int) readVarint() + SMALL_WEIGHTS + 1 : small + 1;
+            return true;
+        }
+
+        private long readVarint() {
+            byte b = bytes[position++];
+            if (b >= 0) {
+                return b; // one-byte fast path, the common case
+            }
+            long value = b & 0x7F;
+            for (int shift = 7; ; shift += 7) {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    Cursor outCursor(Cursor cursor, int id) {
+        return cursor.reset(out.bytes, out.offset(id), id);
+    }
+
+    Cursor inCursor(Cursor cursor, int id) {
+        return cursor.reset(in.bytes, in.offset(id), id);
+    }
+
+    /**
+     * @return number of vertices
+     */
+    public int size() {
+        return labels.size();
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @param label a vertex label
+     * @return id of the vertex with that label, or -1 if there is none
+     */
+    public int id(L label) {
+        return label == null ? -1 : ids.applyAsInt(label);
+    }
+
+    /**
+     * @param id a vertex id, 0 <= id < size()
+     * @return label of that vertex
+     */
+    public L label(int id) {
+        return labels.get(id);
+    }
+
+    /**
+     * @return labels of all vertices, indexed by id
+     */
+    public List<L> labels() {
+        return labels;
+    }
+
+    /**
+     * @param id a vertex id
+     * @return number of edges out of that vertex
+     */
+    public int outDegree(int id) {
+        return out.degree(id);
+    }
+
+    /**
+     * @param id a vertex id
+     * @return number of edges into that vertex
+     */
+    public int inDegree(int id) {
+        return in.degree(id);
+    }
+
+    /**
+     * Decode the out-edges of a vertex into caller-supplied arrays.
+     *
+     * @param id a vertex id
+     * @param targets receives the target ids in increasing order; length >= outDegree(id)
+     * @param weights receives the matching weights; length >= outDegree(id)
+     * @return outDegree(id)
+     */
+    public int targets(int id, int[] targets, int[] weights) {
+        return decode(outCursor(new Cursor(), id), targets, weights);
+    }
+
+    /**
+     * Decode the in-edges of a vertex into caller-supplied arrays.
+     *
+     * @param id a vertex id
+     * @param sources receives the source ids in increasing order; length >= inDegree(id)
+     * @param weights receives the matching weights; length >= inDegree(id)
+     * @return inDegree(id)
+     */
+    public int sources(int id, int[] sources, int[] weights) {
+        return decode(inCursor(new Cursor(), id), sources, weights);
+    }
+
+    private static int decode(Cursor cursor, int[] neighbors, int[] weights) {
+        int count = 0;
+        while (cursor.next()) {
+            neighbors[count] = cursor.id;
+            weights[count] = cursor.weight;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param source a vertex id
+     * @param target a vertex id
+     * @return weight of the edge source -> target, or 0 if there is none
+     */
+    public int weight(int source, int target) {
+        Cursor cursor = outCursor(new Cursor(), source);
+        while (cursor.next()) {
+            if (cursor.id >= target) {
+                return cursor.id == target ? cursor.weight : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return heap bytes used by the compressed adjacency arrays, excluding labels
+     */
+    public long byteSize() {
+        return out.byteSize() + in.byteSize();
+    }
+
+    @Override public boolean add(L vertex) {
+        throw new UnsupportedOperationException("Compressed graphs are immutable.");
+    }
+
+    @Override public int set(L source, L target, int weight) {
+        throw new UnsupportedOperationException("Compressed graphs are immutable.");
+    }
+
+    @Override public boolean remove(L vertex) {
+        throw new UnsupportedOperationException("Compressed graphs are immutable.");
+    }
+
+    @Override public Set<L> vertices() {
+        return new AbstractSet<L>() {
+            @Override public Iterator<L> iterator() {
+                return labels.iterator();
+            }
+
+            @Override public int size() {
+                return labels.size();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override public boolean contains(Object label) {
+                try {
+                    return label != null && id((L) label) >= 0;
+                } catch (ClassCastException e) {
+                    return false; // not a label of this graph's type
+                }
+            }
+        };
+    }
+
+    @Override public Map<L, Integer> sources(L target) {
+        int id = id(target);
+        return id < 0 ? Collections.emptyMap() : toMap(inCursor(new Cursor(), id));
+    }
+
+    @Override public Map<L, Integer> targets(L source) {
+        int id = id(source);
+        return id < 0 ? Collections.emptyMap() : toMap(outCursor(new Cursor(), id));
+    }
+
+    private Map<L, Integer> toMap(Cursor cursor) {
+        Map<L, Integer> map = new HashMap<>();
+        while (cursor.next()) {
+            map.put(labels.get(cursor.id), cursor.weight);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public String toString() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            lines.add(labels.get(i) + " -> " + targets(labels.get(i)));
+        }
+        return "CompressedGraph: " + edgeCount + " edges in " + byteSize() + " bytes\n"
+                + String.join("\n", lines);
+    }
+
+}
@@ -0,0 +1,562 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import graph.BulkGraph;
+import graph.Graph;
+import graph.WeightedEdge;
+
+/**
+ * Merge and diff of two weighted graphs, e.g. corpora built separately or
+ * successive versions of one graph.
+ *
+ * <p>Only two compressed graphs are joined at the representation level:
+ * they merge-join their sorted adjacency lists vertex by vertex. The second
+ * graph's ids are first mapped into the first's numbering, extended by the
+ * labels only it has, with one label lookup per vertex rather than per edge. Its rows then stay sorted
+ * if the two numberings agree in order, e.g. over the same labels;
+ * otherwise each row is sorted once after mapping.
+ *
+ * <p>Every other pair of graphs, including two concrete graphs of the same
+ * type, goes through a snapshot of each graph's adjacency into hash maps of
+ * boxed weights, taken once in parallel, so each costs memory proportional
+ * to its edges on top of the graph itself. A BulkGraph, such as the
+ * concrete graphs, yields all its edges from one edge stream instead of one
+ * targets() scan per vertex. The vertices are then processed in parallel,
+ * each independently.
+ */
+public final class GraphMerge {
+
+    private GraphMerge() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * How the weight of an edge present in both graphs is combined.
+     */
+    public enum Combine {
+        /** sum of the two weights, saturating at Integer.MAX_VALUE */
+        SUM,
+        /** the larger of the two weights */
+        MAX;
+
+        /**
+         * @param current weight in the graph merged into, 0 if there is no edge
+         * @param merged weight in the graph merged from, 0 if there is no edge
+         * @return combined weight
+         */
+        public int apply(int current, int merged) {
+            switch (this) {
+            case SUM:
+                return (int) Math.min((long) current + merged, Integer.MAX_VALUE);
+            case MAX:
+                return Math.max(current, merged);
+            default:
+                throw new AssertionError(this);
+            }
+        }
+    }
+
+    /**
+     * Merge every vertex and edge of source into target. An edge of both
+     * graphs gets the combined weight of the two edges. The source is always
+     * snapshot into a map of boxed weights first, which a BulkGraph target
+     * merges in one pass.
+     *
+     * @param <L> type of vertex labels
+     * @param target graph to modify
+     * @param source graph to merge from; not modified
+     * @param combine how to combine the weights of an edge in both graphs
+     * @return number of edges of target whose weight changed
+     */
+    @SuppressWarnings("unchecked")
+    public static <L> int mergeInto(Graph<L> target, Graph<L> source, Combine combine) {
+        Map<L, Map<L, Integer>> edges = adjacency(source);
+        if (target instanceof BulkGraph) {
+            return ((BulkGraph<L>) target).merge(edges, combine::apply);
+        }
+        // reads of target in parallel, writes afterwards in one thread
+        Set<L> present = target.vertices();
+        List<WeightedEdge<L>> updates = edges.entrySet().parallelStream()
+                .flatMap(entry -> {
+                    Map<L, Integer> current = present.contains(entry.getKey())
+                            ? target.targets(entry.getKey()) : Collections.<L, Integer>emptyMap();
+                    List<WeightedEdge<L>> changed = new ArrayList<>();
+                    for (Map.Entry<L, Integer> edge : entry.getValue().entrySet()) {
+                        int previous = current.getOrDefault(edge.getKey(), 0);
+                        int weight = combine.apply(previous, edge.getValue());
+                        if (weight != previous) {
+                            changed.add(new WeightedEdge<>(entry.getKey(), edge.getKey(), weight));
+                        }
+                    }
+                    return changed.stream();
+                })
+                .collect(Collectors.toList());
+        for (L vertex : edges.keySet()) {
+            target.add(vertex);
+        }
+        for (WeightedEdge<L> edge : updates) {
+            target.set(edge.source(), edge.target(), edge.weight());
+        }
+        return updates.size();
+    }
+
+    /**
+     * Merge two compressed graphs by joining their sorted adjacency lists,
+     * one vertex per task.
+     *
+     * @param <L> type of vertex labels
+     * @param a a compressed graph
+     * @param b a compressed graph
+     * @param combine how to combine the weights of an edge in both graphs
+     * @return compressed graph with the vertices and edges of a and b,
+     *         numbered as in a and then in b's order for the labels only b has
+     */
+    public static <L> CompressedGraph<L> merge(CompressedGraph<L> a, CompressedGraph<L> b, Combine combine) {
+        Join<L> join = new Join<>(a, b);
+        final int n = join.size();
+        int[][] rows = new int[n][];
+        IntStream.range(0, n).parallel().forEach(v -> rows[v] = mergeRow(join.rowA(v), join.rowB(v), combine));
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + rows[v].length / 2;
+        }
+        int[] targets = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int[] row = rows[v];
+            for (int k = 0; k < row.length / 2; k++) {
+                targets[offsets[v] + k] = row[2 * k];
+                weights[offsets[v] + k] = row[2 * k + 1];
+            }
+        });
+        return CompressedGraph.of(IndexedGraph.ofOutEdges(join.labels(), join.ids(), offsets, targets, weights));
+    }
+
+    /*
+     * Two rows of Join edges, merged, as interleaved (target, weight) pairs
+     * in increasing target order; combined weights of 0 are dropped.
+     */
+    private static int[] mergeRow(long[] x, long[] y, Combine combine) {
+        int[] row = new int[2 * (x.length + y.length)];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < x.length || j < y.length) {
+            int target;
+            int weight;
+            if (i < x.length && (j == y.length || Join.target(x[i]) < Join.target(y[j]))) {
+                target = Join.target(x[i]);
+                weight = combine.apply(Join.weight(x[i++]), 0);
+            } else if (i == x.length || Join.target(y[j]) < Join.target(x[i])) {
+                target = Join.target(y[j]);
+                weight = combine.apply(0, Join.weight(y[j++]));
+            } else {
+                target = Join.target(x[i]);
+                weight = combine.apply(Join.weight(x[i++]), Join.weight(y[j++]));
+            }
+            if (weight > 0) {
+                row[length++] = target;
+                row[length++] = weight;
+            }
+        }
+        return length == row.length ? row : Arrays.copyOf(row, length);
+    }
+
+    /**
+     * Compute the changes that turn one graph into another.
+     *
+     * @param <L> type of vertex labels
+     * @param before a graph
+     * @param after a graph
+     * @return vertices and edges added, removed or reweighted from before to after
+     */
+    public static <L> Diff<L> diff(Graph<L> before, Graph<L> after) {
+        if (before instanceof CompressedGraph && after instanceof CompressedGraph) {
+            Join<L> join = new Join<>((CompressedGraph<L>) before, (CompressedGraph<L>) after);
+            return IntStream.range(0, join.size()).parallel()
+                    .collect(() -> new Diff<L>(), (diff, v) -> diff.compare(join, v), Diff::addAll)
+                    .freeze();
+        }
+        Map<L, Map<L, Integer>> from = adjacency(before);
+        Map<L, Map<L, Integer>> to = adjacency(after);
+        Set<L> vertices = new HashSet<>(from.keySet());
+        vertices.addAll(to.keySet());
+        return vertices.parallelStream()
+                .collect(() -> new Diff<L>(), (diff, v) -> diff.compare(v, from.get(v), to.get(v)), Diff::addAll)
+                .freeze();
+    }
+
+    /*
+     * Snapshot of a graph's adjacency: every vertex mapped to its targets and
+     * weights, built in parallel.
+     */
+    @SuppressWarnings("unchecked")
+    private static <L> Map<L, Map<L, Integer>> adjacency(Graph<L> graph) {
+        if (!(graph instanceof BulkGraph)) {
+            return graph.vertices().parallelStream()
+                    .collect(Collectors.toConcurrentMap(v -> v, v -> new HashMap<>(graph.targets(v))));
+        }
+        Stream<WeightedEdge<L>> edges = ((BulkGraph<L>) graph).edges(true);
+        ConcurrentMap<L, Map<L, Integer>> bySource = edges.collect(Collectors.groupingByConcurrent(
+                WeightedEdge::source, Collectors.toMap(WeightedEdge::target, WeightedEdge::weight)));
+        for (L vertex : graph.vertices()) {
+            bySource.putIfAbsent(vertex, Collections.emptyMap());
+        }
+        return bySource;
+    }
+
+    /*
+     * Two compressed graphs numbered in one id space: the ids of a, then the
+     * labels only b has, in b's order. Rows of either graph come out in that
+     * numbering, as edges packed (target << 32 | weight) and sorted by target.
+     */
+    private static final class Join<L> {
+
+        private static final long[] NO_EDGES = new long[0];
+
+        private final CompressedGraph<L> a;
+        private final CompressedGraph<L> b;
+        private final List<L> labels;
+        private final Map<L, Integer> extra;
+        private final int[] fromB;
+        private final int[] toB;
+        private final boolean sorted;
+
+        // Abstraction function:
+        //   represents the union of the vertices of a and b, vertex u labeled
+        //   labels.get(u); vertex j of b is vertex fromB[j] of the union
+        // Rep invariant:
+        //   labels is a.labels() followed by the labels of b not in a, each once
+        //   extra maps each label after a.size() in labels to its index
+        //   labels.get(fromB[j]).equals(b.label(j)) for every id j of b
+        //   toB[u] == j if fromB[j] == u for some j, else -1
+        //   sorted iff fromB is strictly increasing
+        // Safety from rep exposure:
+        //   a join is private to GraphMerge; labels is unmodifiable
+
+        Join(CompressedGraph<L> a, CompressedGraph<L> b) {
+            this.a = a;
+            this.b = b;
+            int n = a.size();
+            List<L> added = new ArrayList<>();
+            Map<L, Integer> extra = new HashMap<>();
+            fromB = new int[b.size()];
+            boolean sorted = true;
+            for (int j = 0; j < b.size(); j++) {
+                L label = b.label(j);
+                int u = a.id(label);
+                if (u < 0) {
+                    u = n + added.size();
+                    added.add(label);
+                    extra.put(label, u);
+                }
+                fromB[j] = u;
+                sorted &= j == 0 || fromB[j - 1] < u;
+            }
+            toB = new int[n + added.size()];
+            Arrays.fill(toB, -1);
+            for (int j = 0; j < fromB.length; j++) {
+                toB[fromB[j]] = j;
+            }
+            if (added.isEmpty()) {
+                this.labels = a.labels();
+            } else {
+                List<L> labels = new ArrayList<>(a.labels());
+                labels.addAll(added);
+                this.labels = Collections.unmodifiableList(labels);
+            }
+            this.extra = Collections.unmodifiableMap(extra);
+            this.sorted = sorted;
+        }
+
+        static int target(long edge) {
+            return (int) (edge >>> 32);
+        }
+
+        static int weight(long edge) {
+            return (int) edge;
+        }
+
+        int size() {
+            return labels.size();
+        }
+
+        L label(int u) {
+            return labels.get(u);
+        }
+
+        List<L> labels() {
+            return labels;
+        }
+
+        // id of each label in the union, -1 for any other; holds a and extra, not the join
+        ToIntFunction<L> ids() {
+            CompressedGraph<L> a = this.a;
+            Map<L, Integer> extra = this.extra;
+            if (extra.isEmpty()) {
+                return a::id;
+            }
+            return label -> {
+                int u = a.id(label);
+                return u >= 0 ? u : extra.getOrDefault(label, -1);
+            };
+        }
+
+        boolean inA(int u) {
+            return u < a.size();
+        }
+
+        boolean inB(int u) {
+            return toB[u] >= 0;
+        }
+
+        // out-edges of u in a
+        long[] rowA(int u) {
+            return inA(u) ? row(a, u, null) : NO_EDGES;
+        }
+
+        // out-edges of u in b, renumbered
+        long[] rowB(int u) {
+            if (!inB(u)) {
+                return NO_EDGES;
+            }
+            long[] row = row(b, toB[u], fromB);
+            if (!sorted) {
+                Arrays.sort(row); // targets are the high bits, and weights are positive
+            }
+            return row;
+        }
+
+        private static long[] row(CompressedGraph<?> graph, int v, int[] renumber) {
+            CompressedGraph.Cursor cursor = graph.outCursor(new CompressedGraph.Cursor(), v);
+            long[] row = new long[cursor.remaining()];
+            for (int k = 0; cursor.next(); k++) {
+                int target = renumber == null ? cursor.id : renumber[cursor.id];
+                row[k] = ((long) target << 32) | cursor.weight;
+            }
+            return row;
+        }
+
+    }
+
+    /**
+     * Differences between two graphs. Each list is in no particular order.
+     *
+     * @param <L> type of vertex labels
+     */
+    public static final class Diff<L> {
+
+        private List<L> addedVertices = new ArrayList<>();
+        private List<L> removedVertices = new ArrayList<>();
+        private List<WeightedEdge<L>> addedEdges = new ArrayList<>();
+        private List<WeightedEdge<L>> removedEdges = new ArrayList<>();
+        private List<Change<L>> changedEdges = new ArrayList<>();
+
+        // Abstraction function:
+        //   represents the changes from a graph before to a graph after:
+        //   vertices and edges only in after, vertices and edges only in
+        //   before, and edges in both with different weights
+        // Rep invariant:
+        //   no vertex is both added and removed; no edge (source, target)
+        //   appears twice across addedEdges, removedEdges and changedEdges
+        // Safety from rep exposure:
+        //   while being collected the lists are private to GraphMerge.diff;
+        //   once returned they are unmodifiable and the elements immutable
+
+        private Diff() {
+        }
+
+        // vertex v, with targets before and after, or null if absent from that graph
+        private void compare(L v, Map<L, Integer> before, Map<L, Integer> after) {
+            if (before == null) {
+                addedVertices.add(v);
+                before = Collections.emptyMap();
+            } else if (after == null) {
+                removedVertices.add(v);
+                after = Collections.emptyMap();
+            }
+            for (Map.Entry<L, Integer> edge : after.entrySet()) {
+                Integer old = before.get(edge.getKey());
+                if (old == null) {
+                    addedEdges.add(new WeightedEdge<>(v, edge.getKey(), edge.getValue()));
+                } else if (!old.equals(edge.getValue())) {
+                    changedEdges.add(new Change<>(v, edge.getKey(), old, edge.getValue()));
+                }
+            }
+            for (Map.Entry<L, Integer> edge : before.entrySet()) {
+                if (!after.containsKey(edge.getKey())) {
+                    removedEdges.add(new WeightedEdge<>(v, edge.getKey(), edge.getValue()));
+                }
+            }
+        }
+
+        // vertex v of a join of the graphs before and after
+        private void compare(Join<L> join, int v) {
+            L source = join.label(v);
+            if (!join.inA(v)) {
+                addedVertices.add(source);
+            } else if (!join.inB(v)) {
+                removedVertices.add(source);
+            }
+            long[] x = join.rowA(v);
+            long[] y = join.rowB(v);
+            int i = 0;
+            int j = 0;
+            while (i < x.length || j < y.length) {
+                if (i < x.length && (j == y.length || Join.target(x[i]) < Join.target(y[j]))) {
+                    removedEdges.add(new WeightedEdge<>(source, join.label(Join.target(x[i])), Join.weight(x[i])));
+                    i++;
+                } else if (i == x.length || Join.target(y[j]) < Join.target(x[i])) {
+                    addedEdges.add(new WeightedEdge<>(source, join.label(Join.target(y[j])), Join.weight(y[j])));
+                    j++;
+                } else {
+                    if (Join.weight(x[i]) != Join.weight(y[j])) {
+                        changedEdges.add(new Change<>(source, join.label(Join.target(x[i])),
+                                Join.weight(x[i]), Join.weight(y[j])));
+                    }
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        private void addAll(Diff<L> other) {
+            addedVertices.addAll(other.addedVertices);
+            removedVertices.addAll(other.removedVertices);
+            addedEdges.addAll(other.addedEdges);
+            removedEdges.addAll(other.removedEdges);
+            changedEdges.addAll(other.changedEdges);
+        }
+
+        private Diff<L> freeze() {
+            addedVertices = Collections.unmodifiableList(addedVertices);
+            removedVertices = Collections.unmodifiableList(removedVertices);
+            addedEdges = Collections.unmodifiableList(addedEdges);
+            removedEdges = Collections.unmodifiableList(removedEdges);
+            changedEdges = Collections.unmodifiableList(changedEdges);
+            return this;
+        }
+
+        /** @return vertices only in the graph after */
+        public List<L> addedVertices() {
+            return addedVertices;
+        }
+
+        /** @return vertices only in the graph before */
+        public List<L> removedVertices() {
+            return removedVertices;
+        }
+
+        /** @return edges only in the graph after, with their weights there */
+        public List<WeightedEdge<L>> addedEdges() {
+            return addedEdges;
+        }
+
+        /** @return edges only in the graph before, with their weights there */
+        public List<WeightedEdge<L>> removedEdges() {
+            return removedEdges;
+        }
+
+        /** @return edges in both graphs whose weight differs */
+        public List<Change<L>> changedEdges() {
+            return changedEdges;
+        }
+
+        /** @return true iff the two graphs are equal */
+        public boolean isEmpty() {
+            return addedVertices.isEmpty() && removedVertices.isEmpty() && addedEdges.isEmpty()
+                    && removedEdges.isEmpty() && changedEdges.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "+" + addedVertices + " -" + removedVertices + " +" + addedEdges + " -" + removedEdges
+                    + " ~" + changedEdges;
+        }
+
+    }
+
+    /**
+     * An immutable change of weight of an edge present in both graphs.
+     *
+     * @param <L> type of vertex labels
+     */
+    public static final class Change<L> {
+
+        private final L source;
+        private final L target;
+        private final int before;
+        private final int after;
+
+        // Rep invariant:
+        //   source and target are non-null, before > 0, after > 0, before != after
+        // Safety from rep exposure:
+        //   all fields are private, final and immutable
+
+        private Change(L source, L target, int before, int after) {
+            this.source = source;
+            this.target = target;
+            this.before = before;
+            this.after = after;
+            assert source != null && target != null && before > 0 && after > 0 && before != after;
+        }
+
+        /** @return label of the source vertex */
+        public L source() {
+            return source;
+        }
+
+        /** @return label of the target vertex */
+        public L target() {
+            return target;
+        }
+
+        /** @return weight of the edge before */
+        public int before() {
+            return before;
+        }
+
+        /** @return weight of the edge after */
+        public int after() {
+            return after;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof Change)) {
+                return false;
+            }
+            Change<?> other = (Change<?>) that;
+            return source.equals(other.source) && target.equals(other.target)
+                    && before == other.before && after == other.after;
+        }
+
+        @Override
+        public int hashCode() {
+            return (source.hashCode() * 31 + target.hashCode()) * 31 + before * 17 + after;
+        }
+
+        @Override
+        public String toString() {
+            return source + " -> " + target + " (" + before + " -> " + after + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,399 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import graph.Graph;
+
+/**
+ * An immutable snapshot of a Graph with vertices numbered 0..size()-1.
+ *
+ * <p>Adjacency is stored in compressed sparse row form: the out-edges of
+ * vertex v are the entries outOffsets[v] .. outOffsets[v+1]-1 of the
+ * outTargets/outWeights arrays, sorted by target id, and likewise for
+ * in-edges. Each vertex's edges can also be visited heaviest first, which
+ * lets searches stop once the remaining edges are too light to matter. The
+ * algorithms in this package run directly on these primitive arrays instead
+ * of the label maps returned by Graph.
+ *
+ * <p>Labels are looked up in a map built from the vertex order, unless the
+ * vertices are already numbered by an external dictionary such as a
+ * {@link graph.FrozenVocabulary}; the snapshot then keeps no label map of its
+ * own and delegates to the dictionary.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class IndexedGraph<L> {
+
+    private final List<L> labels;
+    final ToIntFunction<? super L> ids;
+    final int[] outOffsets;
+    final int[] outTargets;
+    final int[] outWeights;
+    final int[] inOffsets;
+    final int[] inSources;
+    final int[] inWeights;
+    final int[] outByWeight;
+    final int[] inByWeight;
+
+    // Abstraction function:
+    //   represents the graph with vertices labels.get(0..n-1), where n = labels.size(),
+    //   and an edge i -> outTargets[k] of weight outWeights[k] for every
+    //   outOffsets[i] <= k < outOffsets[i+1]; the in* arrays hold the same edges by target
+    // Representation invariant:
+    //   ids.applyAsInt(labels.get(i)) == i for all i, and ids returns -1 for
+    //     every other non-null label
+    //   outOffsets and inOffsets have length n+1, start at 0, are nondecreasing
+    //     and end at the number of edges
+    //   targets of each vertex are strictly increasing, as are sources
+    //   all weights are positive
+    //   outByWeight[outOffsets[i]..outOffsets[i+1]) is a permutation of that same
+    //     range of edge slots, ordered by decreasing weight then increasing target;
+    //     likewise inByWeight for in-edges
+    // Safety from rep exposure:
+    //   labels is unmodifiable and ids is a function over an unmodifiable map
+    //   or a client's immutable dictionary; ids and the arrays are
+    //   package-private and only read by this package, never returned to clients
+
+    private IndexedGraph(List<L> labels, ToIntFunction<? super L> ids,
+            int[] outOffsets, int[] outTargets, int[] outWeights,
+            int[] inOffsets, int[] inSources, int[] inWeights,
+            int[] outByWeight, int[] inByWeight) {
+        this.labels = labels;
+        this.ids = ids;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outWeights = outWeights;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inWeights = inWeights;
+        this.outByWeight = outByWeight;
+        this.inByWeight = inByWeight;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert outOffsets.length == labels.size() + 1;
+        assert inOffsets.length == labels.size() + 1;
+        assert outOffsets[labels.size()] == outTargets.length;
+        assert inOffsets[labels.size()] == inSources.length;
+        assert outTargets.length == inSources.length;
+        assert outByWeight.length == outTargets.length && inByWeight.length == inSources.length;
+    }
+
+    /**
+     * Take a snapshot of a graph, numbering vertices in iteration order of
+     * graph.vertices().
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @return indexed snapshot of graph
+     */
+    public static <L> IndexedGraph<L> of(Graph<L> graph) {
+        return of(graph, new ArrayList<>(graph.vertices()));
+    }
+
+    /**
+     * Take a snapshot of a graph with a given vertex numbering.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @param order every vertex of graph exactly once; vertex order.get(i) gets id i
+     * @return indexed snapshot of graph
+     * @throws IllegalArgumentException if order is not a permutation of graph.vertices()
+     */
+    public static <L> IndexedGraph<L> of(Graph<L> graph, List<L> order) {
+        final int n = order.size();
+        Map<L, Integer> ids = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (ids.put(order.get(i), i) != null) {
+                throw new IllegalArgumentException("Duplicate vertex in order: " + order.get(i));
+            }
+        }
+        if (!ids.keySet().equals(graph.vertices())) {
+            throw new IllegalArgumentException("Order does not match the vertices of the graph.");
+        }
+        return build(graph, Collections.unmodifiableList(new ArrayList<>(order)), lookup(ids));
+    }
+
+    /**
+     * Take a snapshot of a graph whose vertices are already numbered by an
+     * immutable dictionary, e.g. a {@link graph.FrozenVocabulary} with its
+     * labels() and id(). The snapshot keeps no label map or label copies:
+     * {@link #id(Object)} and {@link #label(int)} delegate to the dictionary.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @param labels label of each id; must not change afterwards
+     * @param ids id of each label of labels, -1 for any other label; must not
+     *        change afterwards
+     * @return indexed snapshot of graph
+     * @throws IllegalArgumentException if labels does not hold exactly the
+     *         vertices of graph, numbered by ids
+     */
+    public static <L> IndexedGraph<L> of(Graph<L> graph, List<L> labels, ToIntFunction<? super L> ids) {
+        Set<L> vertices = graph.vertices();
+        if (vertices.size() != labels.size()) {
+            throw new IllegalArgumentException("Dictionary does not match the vertices of the graph.");
+        }
+        for (L vertex : vertices) {
+            int id = ids.applyAsInt(vertex);
+            if (id < 0 || id >= labels.size() || !labels.get(id).equals(vertex)) {
+                throw new IllegalArgumentException("Vertex not numbered by the dictionary: " + vertex);
+            }
+        }
+        return build(graph, Collections.unmodifiableList(labels), ids);
+    }
+
+    // lookup function over a map from labels to ids
+    static <L> ToIntFunction<L> lookup(Map<L, Integer> ids) {
+        Map<L, Integer> map = Collections.unmodifiableMap(ids);
+        return label -> {
+            Integer id = map.get(label);
+            return id == null ? -1 : id;
+        };
+    }
+
+    /*
+     * Snapshot graph, whose vertices are exactly the labels, with the
+     * numbering given by ids.
+     */
+    private static <L> IndexedGraph<L> build(Graph<L> graph, List<L> order, ToIntFunction<? super L> ids) {
+        final int n = order.size();
+
+        // out-edges, sorted by target id within each vertex
+        int[] outOffsets = new int[n + 1];
+        List<int[]> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<L, Integer> targets = graph.targets(order.get(i));
+            long[] packed = new long[targets.size()];
+            int k = 0;
+            for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                packed[k++] = ((long) ids.applyAsInt(edge.getKey()) << 32) | edge.getValue();
+            }
+            Arrays.sort(packed);
+            int[] row = new int[packed.length * 2];
+            for (k = 0; k < packed.length; k++) {
+                row[2 * k] = (int) (packed[k] >>> 32);
+                row[2 * k + 1] = (int) packed[k];
+            }
+            rows.add(row);
+            outOffsets[i + 1] = outOffsets[i] + packed.length;
+        }
+        final int m = outOffsets[n];
+        int[] outTargets = new int[m];
+        int[] outWeights = new int[m];
+        for (int i = 0; i < n; i++) {
+            int[] row = rows.get(i);
+            for (int k = 0; k < row.length / 2; k++) {
+                outTargets[outOffsets[i] + k] = row[2 * k];
+                outWeights[outOffsets[i] + k] = row[2 * k + 1];
+            }
+        }
+        return ofOutEdges(order, ids, outOffsets, outTargets, outWeights);
+    }
+
+    /*
+     * Build from out-edges in CSR form, targets sorted within each vertex,
+     * deriving the in-edges. order is unmodifiable and ids numbers it.
+     */
+    static <L> IndexedGraph<L> ofOutEdges(List<L> order, ToIntFunction<? super L> ids,
+            int[] outOffsets, int[] outTargets, int[] outWeights) {
+        final int n = order.size();
+        final int m = outOffsets[n];
+        int[] inOffsets = new int[n + 1];
+        for (int k = 0; k < m; k++) {
+            inOffsets[outTargets[k] + 1]++;
+        }
+
+        // in-edges by counting sort; sources come out increasing since we scan sources in order
+        for (int i = 0; i < n; i++) {
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        int[] inSources = new int[m];
+        int[] inWeights = new int[m];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int k = outOffsets[i]; k < outOffsets[i + 1]; k++) {
+                int slot = fill[outTargets[k]]++;
+                inSources[slot] = i;
+                inWeights[slot] = outWeights[k];
+            }
+        }
+        return new IndexedGraph<>(order, ids, outOffsets, outTargets, outWeights, inOffsets, inSources, inWeights,
+                byWeight(outOffsets, outWeights), byWeight(inOffsets, inWeights));
+    }
+
+    /*
+     * For each vertex's range of edge slots, the slots sorted by decreasing
+     * weight; ties keep increasing slot order, which is increasing id.
+     */
+    private static int[] byWeight(int[] offsets, int[] weights) {
+        int[] order = new int[weights.length];
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            int from = offsets[v];
+            int to = offsets[v + 1];
+            long[] packed = new long[to - from];
+            for (int k = from; k < to; k++) {
+                packed[k - from] = ((long) (Integer.MAX_VALUE - weights[k]) << 32) | k;
+            }
+            Arrays.sort(packed);
+            for (int k = from; k < to; k++) {
+                order[k] = (int) packed[k - from];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return number of vertices
+     */
+    public int size() {
+        return labels.size();
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * @param label a vertex label
+     * @return id of the vertex with that label, or -1 if there is none
+     */
+    public int id(L label) {
+        return label == null ? -1 : ids.applyAsInt(label);
+    }
+
+    /**
+     * @param id a vertex id, 0 <= id < size()
+     * @return label of that vertex
+     */
+    public L label(int id) {
+        return labels.get(id);
+    }
+
+    /**
+     * @return labels of all vertices, indexed by id
+     */
+    public List<L> labels() {
+        return labels;
+    }
+
+    /**
+     * @param id a vertex id
+     * @return number of edges out of that vertex
+     */
+    public int outDegree(int id) {
+        return outOffsets[id + 1] - outOffsets[id];
+    }
+
+    /**
+     * @param id a vertex id
+     * @return number of edges into that vertex
+     */
+    public int inDegree(int id) {
+        return inOffsets[id + 1] - inOffsets[id];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i index of an out-edge, 0 <= i < outDegree(id)
+     * @return target id of the i'th out-edge of id, in increasing target order
+     */
+    public int target(int id, int i) {
+        return outTargets[outOffsets[id] + i];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i index of an out-edge, 0 <= i < outDegree(id)
+     * @return weight of the i'th out-edge of id
+     */
+    public int targetWeight(int id, int i) {
+        return outWeights[outOffsets[id] + i];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i index of an in-edge, 0 <= i < inDegree(id)
+     * @return source id of the i'th in-edge of id, in increasing source order
+     */
+    public int source(int id, int i) {
+        return inSources[inOffsets[id] + i];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i index of an in-edge, 0 <= i < inDegree(id)
+     * @return weight of the i'th in-edge of id
+     */
+    public int sourceWeight(int id, int i) {
+        return inWeights[inOffsets[id] + i];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i rank of an out-edge by weight, 0 <= i < outDegree(id)
+     * @return target id of the i'th heaviest out-edge of id (ties by increasing target)
+     */
+    public int heaviestTarget(int id, int i) {
+        return outTargets[outByWeight[outOffsets[id] + i]];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i rank of an out-edge by weight, 0 <= i < outDegree(id)
+     * @return weight of the i'th heaviest out-edge of id
+     */
+    public int heaviestTargetWeight(int id, int i) {
+        return outWeights[outByWeight[outOffsets[id] + i]];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i rank of an in-edge by weight, 0 <= i < inDegree(id)
+     * @return source id of the i'th heaviest in-edge of id (ties by increasing source)
+     */
+    public int heaviestSource(int id, int i) {
+        return inSources[inByWeight[inOffsets[id] + i]];
+    }
+
+    /**
+     * @param id a vertex id
+     * @param i rank of an in-edge by weight, 0 <= i < inDegree(id)
+     * @return weight of the i'th heaviest in-edge of id
+     */
+    public int heaviestSourceWeight(int id, int i) {
+        return inWeights[inByWeight[inOffsets[id] + i]];
+    }
+
+    /**
+     * Look up an edge by binary search over the sorted targets of source.
+     *
+     * @param source a vertex id
+     * @param target a vertex id
+     * @return weight of the edge source -> target, or 0 if there is none
+     */
+    public int weight(int source, int target) {
+        int k = Arrays.binarySearch(outTargets, outOffsets[source], outOffsets[source + 1], target);
+        return k < 0 ? 0 : outWeights[k];
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedGraph: " + size() + " vertices, " + edgeCount() + " edges";
+    }
+
+}
@@ -0,0 +1,155 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import graph.Graph;
+
+/**
+ * Weighted PageRank by power iteration.
+ *
+ * <p>A random surfer at vertex u follows edge u -> v with probability
+ * proportional to its weight, and with probability 1 - damping (or always,
+ * at a vertex with no out-edges) jumps to a uniformly random vertex. Each
+ * iteration pulls rank along in-edges, so vertices can be updated
+ * independently and the parallel version needs no synchronization.
+ */
+public final class PageRank {
+
+    /** conventional damping factor */
+    public static final double DEFAULT_DAMPING = 0.85;
+
+    // vertex ranges smaller than this are updated without forking
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private PageRank() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Rank the vertices of a graph.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to rank
+     * @return map from every vertex label to its rank; ranks sum to 1
+     */
+    public static <L> Map<L, Double> rank(Graph<L> graph) {
+        IndexedGraph<L> indexed = IndexedGraph.of(graph);
+        double[] ranks = rank(indexed, DEFAULT_DAMPING, 100, 1e-9, null);
+        Map<L, Double> result = new HashMap<>();
+        for (int v = 0; v < ranks.length; v++) {
+            result.put(indexed.label(v), ranks[v]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Rank the vertices of an indexed graph.
+     *
+     * @param graph graph to rank
+     * @param damping probability of following an edge, 0 <= damping < 1
+     * @param maxIterations maximum number of power iterations, >= 1
+     * @param tolerance stop once the L1 change between iterations is below this
+     * @param pool pool to run each iteration on in parallel, or null to run
+     *        sequentially
+     * @return ranks indexed by vertex id, summing to 1 (empty for an empty graph)
+     */
+    public static double[] rank(IndexedGraph<?> graph, double damping, int maxIterations,
+            double tolerance, ForkJoinPool pool) {
+        if (damping < 0 || damping >= 1 || maxIterations < 1) {
+            throw new IllegalArgumentException("Invalid PageRank parameters.");
+        }
+        final int n = graph.size();
+        if (n == 0) {
+            return new double[0];
+        }
+        long[] outWeight = new long[n];
+        for (int v = 0; v < n; v++) {
+            for (int k = graph.outOffsets[v]; k < graph.outOffsets[v + 1]; k++) {
+                outWeight[v] += graph.outWeights[k];
+            }
+        }
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double dangling = 0;
+            for (int v = 0; v < n; v++) {
+                if (outWeight[v] == 0) {
+                    dangling += rank[v];
+                }
+            }
+            double base = (1 - damping + damping * dangling) / n;
+            Step step = new Step(graph, outWeight, rank, next, damping, base, 0, n,
+                    pool == null ? Integer.MAX_VALUE : PARALLEL_THRESHOLD);
+            double change = pool == null ? step.compute() : pool.invoke(step);
+            double[] swap = rank;
+            rank = next;
+            next = swap;
+            if (change < tolerance) {
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /*
+     * Compute next[from..to) from rank, returning the L1 change over that range.
+     */
+    private static class Step extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexedGraph<?> graph;
+        private final long[] outWeight;
+        private final double[] rank;
+        private final double[] next;
+        private final double damping;
+        private final double base;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        Step(IndexedGraph<?> graph, long[] outWeight, double[] rank, double[] next,
+                double damping, double base, int from, int to, int threshold) {
+            this.graph = graph;
+            this.outWeight = outWeight;
+            this.rank = rank;
+            this.next = next;
+            this.damping = damping;
+            this.base = base;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > threshold) {
+                int mid = (from + to) >>> 1;
+                Step left = new Step(graph, outWeight, rank, next, damping, base, from, mid, threshold);
+                left.fork();
+                double right = new Step(graph, outWeight, rank, next, damping, base, mid, to, threshold).compute();
+                return left.join() + right;
+            }
+            double change = 0;
+            for (int v = from; v < to; v++) {
+                double sum = 0;
+                for (int k = graph.inOffsets[v]; k < graph.inOffsets[v + 1]; k++) {
+                    int u = graph.inSources[k];
+                    sum += rank[u] * graph.inWeights[k] / outWeight[u];
+                }
+                next[v] = base + damping * sum;
+                change += Math.abs(next[v] - rank[v]);
+            }
+            return change;
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import graph.Graph;
+
+/**
+ * Breadth-first reachability, sequential and level-synchronous parallel.
+ */
+public final class Reachability {
+
+    // frontier slices smaller than this are expanded without forking
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private Reachability() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Find the vertices reachable from a vertex by following directed edges.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to search
+     * @param from label of the start vertex
+     * @return labels of all vertices reachable from `from`, including `from`
+     *         itself; empty if `from` is not in graph
+     */
+    public static <L> Set<L> reachable(Graph<L> graph, L from) {
+        IndexedGraph<L> indexed = IndexedGraph.of(graph);
+        int source = indexed.id(from);
+        if (source < 0) {
+            return Collections.emptySet();
+        }
+        BitSet seen = reachable(indexed, source);
+        Set<L> result = new HashSet<>();
+        for (int v = seen.nextSetBit(0); v >= 0; v = seen.nextSetBit(v + 1)) {
+            result.add(indexed.label(v));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Sequential breadth-first search.
+     *
+     * @param graph graph to search
+     * @param source id of the start vertex
+     * @return set of ids reachable from source, including source
+     */
+    public static BitSet reachable(IndexedGraph<?> graph, int source) {
+        BitSet seen = new BitSet(graph.size());
+        int[] queue = new int[graph.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        seen.set(source);
+        while (head < tail) {
+            int v = queue[head++];
+            for (int k = graph.outOffsets[v]; k < graph.outOffsets[v + 1]; k++) {
+                int w = graph.outTargets[k];
+                if (!seen.get(w)) {
+                    seen.set(w);
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Parallel breadth-first search. Each level's frontier is split across
+     * the pool with fork-join; vertices are claimed by compare-and-set on a
+     * shared visited bitmap so each is expanded exactly once.
+     *
+     * @param graph graph to search
+     * @param source id of the start vertex
+     * @param pool pool to run on
+     * @return set of ids reachable from source, including source
+     */
+    public static BitSet parallelReachable(IndexedGraph<?> graph, int source, ForkJoinPool pool) {
+        AtomicIntegerArray visited = new AtomicIntegerArray((graph.size() + 31) / 32);
+        claim(visited, source);
+        int[] frontier = { source };
+        while (frontier.length > 0) {
+            frontier = pool.invoke(new Level(graph, visited, frontier, 0, frontier.length));
+        }
+        BitSet seen = new BitSet(graph.size());
+        for (int word = 0; word < visited.length(); word++) {
+            int bits = visited.get(word);
+            while (bits != 0) {
+                seen.set(word * 32 + Integer.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return seen;
+    }
+
+    /*
+     * Atomically mark v visited; returns true if this call was the one to mark it.
+     */
+    private static boolean claim(AtomicIntegerArray visited, int v) {
+        int word = v >>> 5;
+        int bit = 1 << (v & 31);
+        while (true) {
+            int old = visited.get(word);
+            if ((old & bit) != 0) {
+                return false;
+            }
+            if (visited.compareAndSet(word, old, old | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Expand frontier[from..to) by one level, returning the newly claimed vertices.
+     */
+    private static class Level extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexedGraph<?> graph;
+        private final AtomicIntegerArray visited;
+        private final int[] frontier;
+        private final int from;
+        private final int to;
+
+        Level(IndexedGraph<?> graph, AtomicIntegerArray visited, int[] frontier, int from, int to) {
+            this.graph = graph;
+            this.visited = visited;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                Level left = new Level(graph, visited, frontier, from, mid);
+                left.fork();
+                int[] right = new Level(graph, visited, frontier, mid, to).compute();
+                int[] leftResult = left.join();
+                int[] merged = Arrays.copyOf(leftResult, leftResult.length + right.length);
+                System.arraycopy(right, 0, merged, leftResult.length, right.length);
+                return merged;
+            }
+            int[] next = new int[16];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                int v = frontier[i];
+                for (int k = graph.outOffsets[v]; k < graph.outOffsets[v + 1]; k++) {
+                    int w = graph.outTargets[k];
+                    if (claim(visited, w)) {
+                        if (size == next.length) {
+                            next = Arrays.copyOf(next, size * 2);
+                        }
+                        next[size++] = w;
+                    }
+                }
+            }
+            return Arrays.copyOf(next, size);
+        }
+    }
+
+}
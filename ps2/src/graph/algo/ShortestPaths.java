@@ -0,0 +1,205 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+import graph.Graph;
+
+/**
+ * Dijkstra and A* shortest paths over graphs with positive edge weights.
+ *
+ * <p>Edge weights can be read directly as costs, or as affinities whose
+ * inverse is the cost, so that strongly connected words in a word affinity
+ * graph are close together.
+ */
+public final class ShortestPaths {
+
+    /**
+     * How the weight of an edge is turned into the cost of traversing it.
+     */
+    public enum Cost {
+        /** cost is the edge weight */
+        WEIGHT,
+        /** cost is 1 / edge weight, so heavier edges are cheaper */
+        INVERSE_WEIGHT;
+
+        double of(int weight) {
+            return this == WEIGHT ? weight : 1.0 / weight;
+        }
+    }
+
+    private ShortestPaths() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Find a cheapest path between two vertices.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to search
+     * @param from label of the first vertex
+     * @param to label of the last vertex
+     * @param cost how edge weights become costs
+     * @return labels of a cheapest path from `from` to `to` inclusive, or an
+     *         empty list if either vertex is missing or `to` is unreachable
+     */
+    public static <L> List<L> shortestPath(Graph<L> graph, L from, L to, Cost cost) {
+        IndexedGraph<L> indexed = IndexedGraph.of(graph);
+        int source = indexed.id(from);
+        int target = indexed.id(to);
+        if (source < 0 || target < 0) {
+            return Collections.emptyList();
+        }
+        int[] path = aStar(indexed, source, target, cost, v -> 0.0);
+        List<L> labels = new ArrayList<>(path.length);
+        for (int id : path) {
+            labels.add(indexed.label(id));
+        }
+        return Collections.unmodifiableList(labels);
+    }
+
+    /**
+     * Single-source Dijkstra.
+     *
+     * @param graph graph to search
+     * @param source id of the source vertex
+     * @param cost how edge weights become costs
+     * @return array of the cost of a cheapest path from source to each vertex,
+     *         indexed by id; Double.POSITIVE_INFINITY for unreachable vertices
+     */
+    public static double[] distances(IndexedGraph<?> graph, int source, Cost cost) {
+        double[] dist = new double[graph.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        search(graph, source, -1, cost, v -> 0.0, dist, new int[graph.size()]);
+        return dist;
+    }
+
+    /**
+     * A* search between two vertices; with a zero heuristic this is Dijkstra.
+     *
+     * @param graph graph to search
+     * @param from id of the first vertex
+     * @param to id of the last vertex
+     * @param cost how edge weights become costs
+     * @param heuristic consistent estimate of the cost from a vertex id to `to`:
+     *        nonnegative, and h(v) <= cost(v, w) + h(w) for every edge v -> w
+     * @return ids of a cheapest path from `from` to `to` inclusive, or an
+     *         empty array if `to` is unreachable
+     */
+    public static int[] aStar(IndexedGraph<?> graph, int from, int to, Cost cost,
+            IntToDoubleFunction heuristic) {
+        double[] dist = new double[graph.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] parent = new int[graph.size()];
+        if (!search(graph, from, to, cost, heuristic, dist, parent)) {
+            return new int[0];
+        }
+        int length = 1;
+        for (int v = to; v != from; v = parent[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = to, i = length - 1; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /*
+     * Best-first search from `from`, stopping early when `to` (if >= 0) is
+     * settled. Fills dist and parent; returns whether `to` was reached.
+     */
+    private static boolean search(IndexedGraph<?> graph, int from, int to, Cost cost,
+            IntToDoubleFunction heuristic, double[] dist, int[] parent) {
+        boolean[] settled = new boolean[graph.size()];
+        DoubleHeap open = new DoubleHeap();
+        dist[from] = 0;
+        parent[from] = from;
+        open.push(heuristic.applyAsDouble(from), from);
+        while (!open.isEmpty()) {
+            int v = open.pop();
+            if (settled[v]) {
+                continue; // stale entry left behind by a later decrease
+            }
+            settled[v] = true;
+            if (v == to) {
+                return true;
+            }
+            for (int k = graph.outOffsets[v]; k < graph.outOffsets[v + 1]; k++) {
+                int w = graph.outTargets[k];
+                double d = dist[v] + cost.of(graph.outWeights[k]);
+                if (d < dist[w]) {
+                    dist[w] = d;
+                    parent[w] = v;
+                    open.push(d + heuristic.applyAsDouble(w), w);
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Binary min-heap of (priority, id) pairs in parallel primitive arrays.
+     * Decrease-key is done by pushing a duplicate and skipping stale pops.
+     */
+    private static class DoubleHeap {
+        private double[] keys = new double[16];
+        private int[] values = new int[16];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (keys[up] <= key) {
+                    break;
+                }
+                keys[i] = keys[up];
+                values[i] = values[up];
+                i = up;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int top = values[0];
+            double key = keys[--size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+    }
+
+}
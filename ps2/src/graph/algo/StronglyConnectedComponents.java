@@ -0,0 +1,123 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import graph.Graph;
+
+/**
+ * Strongly connected components by Tarjan's algorithm, run iteratively so
+ * that long chains of words cannot overflow the call stack.
+ */
+public final class StronglyConnectedComponents {
+
+    private StronglyConnectedComponents() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Find the strongly connected components of a graph.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to analyze
+     * @return the components, each a set of vertex labels; every vertex of
+     *         graph is in exactly one component
+     */
+    public static <L> List<Set<L>> components(Graph<L> graph) {
+        IndexedGraph<L> indexed = IndexedGraph.of(graph);
+        int[] component = componentIds(indexed);
+        int count = 0;
+        for (int c : component) {
+            count = Math.max(count, c + 1);
+        }
+        List<Set<L>> result = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            result.add(new HashSet<>());
+        }
+        for (int v = 0; v < component.length; v++) {
+            result.get(component[v]).add(indexed.label(v));
+        }
+        for (int c = 0; c < count; c++) {
+            result.set(c, Collections.unmodifiableSet(result.get(c)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Label every vertex with its strongly connected component.
+     *
+     * @param graph graph to analyze
+     * @return array indexed by vertex id of component numbers 0..c-1, where c
+     *         is the number of components; components are numbered in
+     *         reverse topological order of the condensation
+     */
+    public static int[] componentIds(IndexedGraph<?> graph) {
+        final int n = graph.size();
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] component = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        // explicit DFS call stack: vertex and position in its out-edge list
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int nextIndex = 0;
+        int nextComponent = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callVertex[0] = root;
+            callEdge[0] = graph.outOffsets[root];
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callVertex[depth];
+                if (callEdge[depth] < graph.outOffsets[v + 1]) {
+                    int w = graph.outTargets[callEdge[depth]++];
+                    if (index[w] < 0) {
+                        depth++;
+                        callVertex[depth] = w;
+                        callEdge[depth] = graph.outOffsets[w];
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+                // all edges of v done: pop a component if v is its root, then return
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = nextComponent;
+                    } while (w != v);
+                    nextComponent++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callVertex[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+        return component;
+    }
+
+}
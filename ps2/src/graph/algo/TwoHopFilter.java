@@ -0,0 +1,261 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+/**
+ * A blocked Bloom filter over the vertex pairs (u, w) joined by at least one
+ * two-edge path u -> b -> w.
+ *
+ * <p>If {@link #mightHaveBridge(int, int)} returns false there is certainly
+ * no such path, so a bridge search can be skipped; if it returns true there
+ * probably is one. All probes for a pair fall in one 512-bit block (eight
+ * longs, one cache line), so a query costs a single cache miss.
+ *
+ * <p>The filter is sized for a target false positive rate at the number of
+ * distinct pairs, each inserted once however many paths join it, but never
+ * uses more than a memory budget; when the budget binds, the actual rate is
+ * higher, as reported by {@link #expectedFalsePositiveRate()}.
+ *
+ * <p>A hub whose in-degree times out-degree exceeds a cap is not expanded
+ * pair by pair. Instead the smaller of its two sides is marked: every pair
+ * from a marked source, or to a marked target, might have a bridge. This
+ * keeps the build time and the filter size from growing quadratically in a
+ * hub's degree, at the cost of a higher false positive rate for the marked
+ * vertices, which the reported rate includes. Immutable.
+ */
+public final class TwoHopFilter {
+
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int MAX_HASHES = 16;
+    private static final long HUB_PATHS = 1 << 20;
+
+    private final long[] bits;
+    private final int blocks;
+    private final int hashes;
+    private final long insertions;
+    private final long[] anySource;
+    private final long[] anyTarget;
+    private final double markedShare;
+
+    // Abstraction function:
+    //   represents the set of pairs (u, w) such that u is set in anySource, or
+    //   w is set in anyTarget, or all `hashes` bits chosen by probe(u, w) are
+    //   set in bits
+    // Representation invariant:
+    //   blocks >= 1, bits.length == blocks * BLOCK_LONGS, 1 <= hashes <= MAX_HASHES
+    //   insertions >= 0; anySource.length == anyTarget.length
+    //   markedShare is the fraction of pairs of vertices with a marked source or target
+    // Safety from rep exposure:
+    //   all arrays are private and never returned
+
+    private TwoHopFilter(long[] bits, int hashes, long insertions, long[] anySource, long[] anyTarget, int n) {
+        this.bits = bits;
+        this.blocks = bits.length / BLOCK_LONGS;
+        this.hashes = hashes;
+        this.insertions = insertions;
+        this.anySource = anySource;
+        this.anyTarget = anyTarget;
+        this.markedShare = n == 0 ? 0
+                : 1 - (1 - (double) cardinality(anySource) / n) * (1 - (double) cardinality(anyTarget) / n);
+        assert blocks >= 1 && bits.length == blocks * BLOCK_LONGS;
+        assert 1 <= hashes && hashes <= MAX_HASHES;
+        assert anySource.length == anyTarget.length;
+    }
+
+    /**
+     * Build a filter of the two-hop pairs of a graph.
+     *
+     * <p>Building visits every two-edge path twice, once to count the distinct
+     * pairs and once to insert them, except for the paths through hubs with
+     * more than 2^20 of them, which cost one visit per vertex on the smaller
+     * side of the hub.
+     *
+     * @param graph graph to index
+     * @param falsePositiveRate target false positive rate, 0 < rate < 1
+     * @param maxBytes memory budget for the filter, >= 64
+     * @return filter containing every pair (u, w) with a path u -> b -> w
+     */
+    public static TwoHopFilter build(IndexedGraph<?> graph, double falsePositiveRate, long maxBytes) {
+        return build(graph, falsePositiveRate, maxBytes, HUB_PATHS);
+    }
+
+    /*
+     * Build a filter that marks the smaller side of every middle vertex with
+     * more than hubPaths two-edge paths through it.
+     */
+    static TwoHopFilter build(IndexedGraph<?> graph, double falsePositiveRate, long maxBytes, long hubPaths) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1) || maxBytes < BLOCK_BITS / 8) {
+            throw new IllegalArgumentException("Invalid false positive rate or memory budget.");
+        }
+        int size = graph.size();
+        long[] anySource = new long[(size + 63) >>> 6];
+        long[] anyTarget = new long[(size + 63) >>> 6];
+        long[] hubs = new long[(size + 63) >>> 6];
+        for (int b = 0; b < size; b++) {
+            int in = graph.inDegree(b);
+            int out = graph.outDegree(b);
+            if ((long) in * out > hubPaths) {
+                set(hubs, b);
+                if (in <= out) {
+                    for (int i = graph.inOffsets[b]; i < graph.inOffsets[b + 1]; i++) {
+                        set(anySource, graph.inSources[i]);
+                    }
+                } else {
+                    for (int k = graph.outOffsets[b]; k < graph.outOffsets[b + 1]; k++) {
+                        set(anyTarget, graph.outTargets[k]);
+                    }
+                }
+            }
+        }
+        long pairs = forEachPair(graph, hubs, anySource, anyTarget, null);
+        long n = Math.max(1, pairs);
+        double ln2 = Math.log(2);
+        double wantedBits = -n * Math.log(falsePositiveRate) / (ln2 * ln2);
+        long maxBlocks = Math.min(maxBytes * 8 / BLOCK_BITS, Integer.MAX_VALUE / BLOCK_LONGS);
+        int blocks = (int) Math.max(1, Math.min(maxBlocks, (long) Math.ceil(wantedBits / BLOCK_BITS)));
+        long m = (long) blocks * BLOCK_BITS;
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) m / n * ln2)));
+
+        TwoHopFilter filter = new TwoHopFilter(new long[blocks * BLOCK_LONGS], hashes, pairs,
+                anySource, anyTarget, size);
+        forEachPair(graph, hubs, anySource, anyTarget, filter);
+        return filter;
+    }
+
+    /*
+     * Visit each distinct pair (u, w) joined by a path through a middle vertex
+     * that is not a hub, with u not in anySource and w not in anyTarget,
+     * inserting it into filter if non-null; returns the number of pairs.
+     */
+    private static long forEachPair(IndexedGraph<?> graph, long[] hubs, long[] anySource, long[] anyTarget,
+            TwoHopFilter filter) {
+        int[] seen = new int[graph.size()]; // seen[w] == u + 1 once (u, w) is visited
+        long pairs = 0;
+        for (int u = 0; u < graph.size(); u++) {
+            if (get(anySource, u)) {
+                continue;
+            }
+            for (int k = graph.outOffsets[u]; k < graph.outOffsets[u + 1]; k++) {
+                int b = graph.outTargets[k];
+                if (get(hubs, b)) {
+                    continue;
+                }
+                for (int j = graph.outOffsets[b]; j < graph.outOffsets[b + 1]; j++) {
+                    int w = graph.outTargets[j];
+                    if (seen[w] != u + 1 && !get(anyTarget, w)) {
+                        seen[w] = u + 1;
+                        pairs++;
+                        if (filter != null) {
+                            filter.insert(u, w);
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static void set(long[] bitSet, int i) {
+        bitSet[i >>> 6] |= 1L << i;
+    }
+
+    private static boolean get(long[] bitSet, int i) {
+        return (bitSet[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static int cardinality(long[] bitSet) {
+        int count = 0;
+        for (long word : bitSet) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static long mix(int u, int w) {
+        // splitmix64 finalizer over the packed pair
+        long z = ((long) u << 32 | (w & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void insert(int u, int w) {
+        long h = mix(u, w);
+        int base = (int) ((h >>> 32) * blocks >>> 32) * BLOCK_LONGS;
+        int probe = (int) h;
+        int step = (int) (h >>> 40) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = probe & (BLOCK_BITS - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+            probe += step;
+        }
+    }
+
+    /**
+     * @param u id of a vertex
+     * @param w id of a vertex
+     * @return false if the graph this filter was built from has no two-edge
+     *         path from u to w; true if it probably has one
+     */
+    public boolean mightHaveBridge(int u, int w) {
+        if (u >= 0 && u < anySource.length * 64 && get(anySource, u)
+                || w >= 0 && w < anyTarget.length * 64 && get(anyTarget, w)) {
+            return true;
+        }
+        long h = mix(u, w);
+        int base = (int) ((h >>> 32) * blocks >>> 32) * BLOCK_LONGS;
+        int probe = (int) h;
+        int step = (int) (h >>> 40) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = probe & (BLOCK_BITS - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            probe += step;
+        }
+        return true;
+    }
+
+    /**
+     * @return memory used by the bit array, in bytes
+     */
+    public long byteSize() {
+        return (long) bits.length * 8;
+    }
+
+    /**
+     * @return number of hash probes per pair
+     */
+    public int hashCount() {
+        return hashes;
+    }
+
+    /**
+     * @return number of distinct pairs inserted; pairs from a marked source or
+     *         to a marked target are not inserted
+     */
+    public long insertions() {
+        return insertions;
+    }
+
+    /**
+     * @return estimated false positive rate: the share of pairs with a marked
+     *         source or target, plus for the rest the classic Bloom filter
+     *         formula at the number of pairs inserted (blocking makes the true
+     *         rate slightly higher)
+     */
+    public double expectedFalsePositiveRate() {
+        double m = (double) blocks * BLOCK_BITS;
+        double bloom = Math.pow(1 - Math.exp(-hashes * (double) insertions / m), hashes);
+        return markedShare + (1 - markedShare) * bloom;
+    }
+
+    @Override
+    public String toString() {
+        return "TwoHopFilter: " + byteSize() + " bytes, " + hashes + " hashes, "
+                + insertions + " insertions, ~" + expectedFalsePositiveRate() + " false positives";
+    }
+
+}
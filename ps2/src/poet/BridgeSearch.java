@@ -0,0 +1,295 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import graph.Graph;
+
+/**
+ * Bounded bidirectional search for variable-length bridge paths.
+ *
+ * <p>Finds the path w1 -> b1 -> ... -> bk -> w2 with 1 <= k <= maxBridgeWords
+ * of maximum total weight, searching forward from w1 with Graph.targets and
+ * backward from w2 with Graph.sources until the two frontiers meet in the
+ * middle. The weight of a path is the plain sum of its edge weights, so a
+ * longer path beats a shorter one whose edges are only somewhat heavier.
+ *
+ * <p>Every simple partial path of each depth is kept, not just the heaviest
+ * one per vertex: the heaviest may share a word with the other half, and a
+ * lighter one may then complete the best path. A partial path is dropped as
+ * soon as it revisits a word, and pruned when even maximum-weight edges for
+ * the rest of the path could not beat the best complete path found so far.
+ * Each partial path costs one neighbor expansion, so the expansion budget
+ * also bounds their number.
+ *
+ * <p>Every query runs under a budget of neighbor expansions and wall-clock
+ * time; when the budget runs out the best path found so far is returned.
+ * Immutable apart from the graph it reads, which must not be mutated while
+ * a search is running.
+ */
+class BridgeSearch {
+
+    private final Graph<String> graph;
+    private final int maxBridgeWords;
+    private final long maxExpansions;
+    private final long timeoutNanos;
+    private final int maxWeight;
+
+    // Abstraction function:
+    //   represents the search for bridge paths of 1..maxBridgeWords words in graph,
+    //   each query limited to maxExpansions neighbor visits and timeoutNanos of time
+    // Representation invariant:
+    //   graph != null, maxBridgeWords >= 1, maxExpansions > 0, timeoutNanos > 0
+    //   maxWeight >= every edge weight in graph at construction time
+    // Safety from rep exposure:
+    //   all fields are private and final; returned paths are fresh unmodifiable lists
+
+    /**
+     * Create a search over a graph.
+     *
+     * @param graph affinity graph to search, must not be mutated afterwards
+     * @param maxBridgeWords maximum number of words inserted between a pair, >= 1
+     * @param maxExpansions maximum neighbor visits per query, > 0
+     * @param timeoutNanos maximum time per query in nanoseconds, > 0
+     */
+    BridgeSearch(Graph<String> graph, int maxBridgeWords, long maxExpansions, long timeoutNanos) {
+        if (maxBridgeWords < 1 || maxExpansions <= 0 || timeoutNanos <= 0) {
+            throw new IllegalArgumentException("Invalid bridge search bounds.");
+        }
+        this.graph = graph;
+        this.maxBridgeWords = maxBridgeWords;
+        this.maxExpansions = maxExpansions;
+        this.timeoutNanos = timeoutNanos;
+        int max = 0;
+        for (String vertex : graph.vertices()) {
+            for (int weight : graph.targets(vertex).values()) {
+                max = Math.max(max, weight);
+            }
+        }
+        this.maxWeight = max;
+        checkRep();
+    }
+
+    /**
+     * @param graph affinity graph to search, must not be mutated afterwards
+     * @return a search over graph with the same bounds as this one
+     */
+    BridgeSearch over(Graph<String> graph) {
+        return new BridgeSearch(graph, maxBridgeWords, maxExpansions, timeoutNanos);
+    }
+
+    private void checkRep() {
+        assert graph != null;
+        assert maxBridgeWords >= 1;
+        assert maxExpansions > 0 && timeoutNanos > 0;
+        assert maxWeight >= 0;
+    }
+
+    /**
+     * Find the best bridge path between two words.
+     *
+     * @param from lower-case first word
+     * @param to lower-case second word
+     * @return the bridge words in path order, or an empty list if no path of
+     *         at most maxBridgeWords intermediate words was found in budget
+     */
+    List<String> find(String from, String to) {
+        final int maxEdges = maxBridgeWords + 1;
+        final int forwardDepth = (maxEdges + 1) / 2;
+        final int backwardDepth = maxEdges / 2;
+        final Budget budget = new Budget();
+
+        // layer d holds the simple partial paths of exactly d edges ending at each vertex, heaviest first
+        List<Map<String, List<PartialPath>>> forward = new ArrayList<>();
+        List<Map<String, List<PartialPath>>> backward = new ArrayList<>();
+        forward.add(Collections.singletonMap(from, Collections.singletonList(new PartialPath(from, 0, null))));
+        backward.add(Collections.singletonMap(to, Collections.singletonList(new PartialPath(to, 0, null))));
+        int[] frontier = { 1, 1 }; // number of partial paths in the last forward and backward layers
+
+        Best best = new Best();
+        boolean forwardDone = false;
+        boolean backwardDone = false;
+        while ((!forwardDone || !backwardDone) && !budget.exhausted()) {
+            // expand whichever unfinished side currently has the smaller frontier
+            boolean expandForward = backwardDone
+                    || (!forwardDone && frontier[0] <= frontier[1]);
+            List<Map<String, List<PartialPath>>> side = expandForward ? forward : backward;
+            List<Map<String, List<PartialPath>>> other = expandForward ? backward : forward;
+
+            int depth = side.size();
+            Map<String, List<PartialPath>> layer = new HashMap<>();
+            frontier[expandForward ? 0 : 1] = expand(last(side), layer, depth, maxEdges,
+                    expandForward, from, to, best, budget);
+            boolean sideDone = layer.isEmpty() || depth == (expandForward ? forwardDepth : backwardDepth);
+            if (expandForward) {
+                forwardDone = sideDone;
+            } else {
+                backwardDone = sideDone;
+            }
+            if (layer.isEmpty()) {
+                continue; // this side cannot be extended, but the other may still reach it
+            }
+            side.add(layer);
+
+            for (List<PartialPath> meets : layer.values()) {
+                for (PartialPath meet : meets) {
+                    for (int d = 1; d < other.size() && depth + d <= maxEdges; d++) {
+                        List<PartialPath> rests = other.get(d).get(meet.vertex);
+                        if (rests == null) {
+                            continue;
+                        }
+                        for (PartialPath rest : rests) {
+                            if (meet.weight + rest.weight <= best.weight) {
+                                break; // the rest are lighter still
+                            }
+                            PartialPath head = expandForward ? meet : rest;
+                            PartialPath tail = expandForward ? rest : meet;
+                            best.offer(head, tail, from, to);
+                        }
+                    }
+                }
+            }
+        }
+        return best.path;
+    }
+
+    /*
+     * Extend every partial path in a layer by one edge into next, skipping the
+     * endpoints, words already on the path, and partial paths whose weight
+     * bound cannot beat the best found so far. Returns the number of partial
+     * paths put in next, each of whose lists is sorted heaviest first.
+     */
+    private int expand(Map<String, List<PartialPath>> layer, Map<String, List<PartialPath>> next,
+            int depth, int maxEdges, boolean forward, String from, String to, Best best, Budget budget) {
+        int remainingAfter = maxEdges - depth;
+        int count = 0;
+        search:
+        for (List<PartialPath> paths : layer.values()) {
+            for (PartialPath path : paths) {
+                if (path.weight + (remainingAfter + 1) * (long) maxWeight <= best.weight) {
+                    continue;
+                }
+                Map<String, Integer> neighbors = forward ? graph.targets(path.vertex) : graph.sources(path.vertex);
+                for (Map.Entry<String, Integer> edge : neighbors.entrySet()) {
+                    if (!budget.spend()) {
+                        break search;
+                    }
+                    String vertex = edge.getKey();
+                    if (vertex.equals(from) || vertex.equals(to) || path.contains(vertex)) {
+                        continue; // endpoints are never bridge words, and no word is used twice
+                    }
+                    long weight = path.weight + edge.getValue();
+                    if (weight + remainingAfter * (long) maxWeight <= best.weight) {
+                        continue;
+                    }
+                    next.computeIfAbsent(vertex, v -> new ArrayList<>()).add(new PartialPath(vertex, weight, path));
+                    count++;
+                }
+            }
+        }
+        for (List<PartialPath> paths : next.values()) {
+            paths.sort(HEAVIEST_FIRST);
+        }
+        return count;
+    }
+
+    private static final Comparator<PartialPath> HEAVIEST_FIRST =
+            (a, b) -> Long.compare(b.weight, a.weight);
+
+    private static <T> T last(List<T> list) {
+        return list.get(list.size() - 1);
+    }
+
+    /*
+     * Per-query expansion and time budget.
+     */
+    private class Budget {
+        private final long deadline = System.nanoTime() + timeoutNanos;
+        private long expansions = 0;
+        private boolean exhausted = false;
+
+        boolean spend() {
+            if (exhausted) {
+                return false;
+            }
+            expansions++;
+            // reading the clock is comparatively slow, so only check it now and then
+            if (expansions > maxExpansions
+                    || ((expansions & 0x3F) == 0 && System.nanoTime() - deadline > 0)) {
+                exhausted = true;
+            }
+            return !exhausted;
+        }
+
+        boolean exhausted() {
+            return exhausted;
+        }
+    }
+
+    /*
+     * Immutable partial path, linked back towards the endpoint it started from.
+     */
+    private static class PartialPath {
+        private final String vertex;
+        private final long weight;
+        private final PartialPath previous;
+
+        PartialPath(String vertex, long weight, PartialPath previous) {
+            this.vertex = vertex;
+            this.weight = weight;
+            this.previous = previous;
+        }
+
+        // true iff word is on this path; paths have at most maxBridgeWords + 1 words
+        boolean contains(String word) {
+            for (PartialPath p = this; p != null; p = p.previous) {
+                if (p.vertex.equals(word)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Best complete path found so far.
+     */
+    private static class Best {
+        private long weight = 0;
+        private List<String> path = Collections.emptyList();
+
+        /*
+         * Consider the path joining head (from `from`) and tail (to `to`),
+         * which both end at the same meeting vertex.
+         */
+        void offer(PartialPath head, PartialPath tail, String from, String to) {
+            long total = head.weight + tail.weight;
+            if (total <= weight) {
+                return;
+            }
+            List<String> words = new ArrayList<>();
+            for (PartialPath p = head; p.previous != null; p = p.previous) {
+                words.add(p.vertex);
+            }
+            Collections.reverse(words);
+            for (PartialPath p = tail.previous; p.previous != null; p = p.previous) {
+                words.add(p.vertex);
+            }
+            Set<String> seen = new HashSet<>(words);
+            if (seen.size() != words.size()) {
+                return; // each half is simple, but the two share a word
+            }
+            weight = total;
+            path = Collections.unmodifiableList(words);
+        }
+    }
+}
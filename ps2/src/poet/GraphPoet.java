@@ -7,10 +7,24 @@ package poet;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.IntToLongFunction;
 
+import graph.BulkGraph;
+import graph.ConcreteVerticesGraph;
+import graph.FrozenVocabulary;
 import graph.Graph;
+import graph.GraphCompaction;
+import graph.algo.BridgeWords;
+import graph.algo.CompressedGraph;
+import graph.algo.IndexedGraph;
+import graph.algo.TwoHopFilter;
 /**
  * A graph-based poetry generator.
  * 
@@ -55,16 +69,42 @@ import graph.Graph;
  */
 public class GraphPoet {
     
-    private final Graph<String> graph = Graph.empty();
+    private Graph<String> graph = Graph.empty();
+    private BridgeSearch search;
+    private FrozenVocabulary vocabulary;
+    private IndexedGraph<String> index;
+    private CompressedGraph<String> compressed;
+    private TwoHopFilter filter;
+    private NGramModel context;
+    private double filterRate;
+    private long filterBudget;
+    private final LongAdder pairsQueried = new LongAdder();
+    private final LongAdder pairsRejected = new LongAdder();
+    private final LongAdder bridgesFound = new LongAdder();
     
     // Abstraction function:
     //   The graph represents a word affinity graph, where vertices are unique words from the corpus, 
     //   and edges represent adjacency counts between words (edge weights).
+    //   graph is the String-labelled graph built from the corpus only until reindex();
+    //   from then on it is compressed, which reads the frozen vocabulary.
+    //   search, if non-null, finds bridge paths of more than one word.
+    //   vocabulary maps each word of graph to its id in index.
+    //   index, if non-null, is a snapshot of graph with sorted adjacency for single
+    //   bridge words, keyed on vocabulary ids with no label map or label copies of
+    //   its own; otherwise single bridge words are found in compressed.
+    //   filter, if non-null, over-approximates the pairs of index ids joined by a
+    //   two-edge path, built with filterRate and filterBudget.
+    //   context, if non-null, counts the corpus n-grams of order 3 and up by vocabulary id.
+    //   pairsQueried, pairsRejected and bridgesFound count bridge lookups so far.
     // Representation invariant:
     //   - All vertices in the graph are non-empty, non-null strings.
     //   - Edge weights are positive integers.
+    //   - search is null or searches graph.
+    //   - graph == compressed; index is null or has the same vertices and
+    //     edges, numbered as in vocabulary.
+    //   - filter is null or was built from a snapshot of graph numbered as in vocabulary.
     // Safety from rep exposure:
-    //   - The graph field is private and final, and its references are not exposed.
+    //   - The graph field is private, and its references are not exposed.
     
     /**
      * Create a new poet with the graph from the given corpus.
@@ -73,13 +113,78 @@ public class GraphPoet {
      * @throws IOException if the corpus file cannot be found or read
      */
     public GraphPoet(File corpus) throws IOException {
-        List<String> lines = Files.readAllLines(corpus.toPath());
-        String content = String.join(" ", lines);//concatenate all lines in a single string as pre-condition of buildGraoh()
-        buildGraph(content);
+        load(corpus);
+        this.search = null;
+        reindex();
+        checkRep();
+    }
+    
+    /**
+     * Create a new poet that may insert a path of several bridge words.
+     * 
+     * <p>Between input words w1 and w2 this poet inserts the words b1..bk of the
+     * path w1 -> b1 -> ... -> bk -> w2 with 1 <= k <= maxBridgeWords that has
+     * maximum total weight, found by a bounded bidirectional search. Each
+     * adjacent pair gets at most maxExpansions neighbor visits and
+     * timeoutNanos of search time; when that budget runs out the best path
+     * found so far is used. The weight of a path is the sum of its edge
+     * weights, not normalized by length, so longer bridges are favored. With
+     * maxBridgeWords = 1 this behaves like {@link #GraphPoet(File)}.
+     *
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param maxBridgeWords maximum number of bridge words per adjacent pair, >= 1
+     * @param maxExpansions maximum neighbor visits per adjacent pair, > 0
+     * @param timeoutNanos maximum search time per adjacent pair in nanoseconds, > 0
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, int maxBridgeWords, long maxExpansions, long timeoutNanos) throws IOException {
+        load(corpus);
+        reindex();
+        this.search = maxBridgeWords > 1
+                ? new BridgeSearch(graph, maxBridgeWords, maxExpansions, timeoutNanos)
+                : null;
+        checkRep();
+    }
+    
+    /**
+     * Create a new poet that also uses longer word contexts to choose bridges.
+     * 
+     * <p>Besides the affinity graph, this poet counts every n-gram of 3 up to
+     * contextOrder words in the corpus. Among the bridge words b that form a
+     * two-edge path w1 -> b -> w2, it picks the one maximizing the two edge
+     * weights plus the counts of every such n-gram that inserting b would
+     * complete in the poem so far, i.e. those ending in b and in b, w2. With
+     * no longer n-grams matching, this is the same choice as
+     * {@link #GraphPoet(File)}.
+     *
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param contextOrder longest n-gram counted, >= 3; limited by the
+     *        vocabulary size so that an n-gram of word ids fits in 63 bits
+     *        (order 3 for up to 2^21 - 2 distinct words)
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, int contextOrder) throws IOException {
+        String[] words = load(corpus);
+        this.search = null;
+        reindex();
+        context = new NGramModel(contextOrder, vocabulary.size());
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            ids[i] = vocabulary.id(words[i]);
+        }
+        context.countAll(ids);
         checkRep();
     }
     
-    private void buildGraph(String content) {
+    //reads the corpus into graph; returns the lower-case corpus words
+    private String[] load(File corpus) throws IOException {
+        List<String> lines = Files.readAllLines(corpus.toPath());
+        String content = String.join(" ", lines);//concatenate all lines in a single string as pre-condition of buildGraph()
+        return buildGraph(content);
+    }
+    
+    //returns the lower-case corpus words
+    private String[] buildGraph(String content) {
         String[] words = content.toLowerCase().split("\\s+"); // separate words to build corpus
         for (int i = 0; i < words.length - 1; i++) {
         	//adjacent words
@@ -90,6 +195,111 @@ public class GraphPoet {
             int currentWeight = graph.set(word1, word2, 0);
             graph.set(word1, word2, currentWeight + 1);
         }
+        return words;
+    }
+    
+    //rebuild the lookup structures from graph; vertex ids change, so the filter is rebuilt too.
+    //graph is then replaced by compressed, which shares the vocabulary's labels, so the
+    //String-labelled graph with its per-word maps and boxed weights can be collected
+    private void reindex() {
+        FrozenVocabulary old = vocabulary;
+        boolean keepIndex = compressed == null || index != null;
+        vocabulary = FrozenVocabulary.of(graph.vertices());
+        index = IndexedGraph.of(graph, vocabulary.labels(), vocabulary::id);
+        if (filter != null) {
+            filter = TwoHopFilter.build(index, filterRate, filterBudget);
+        }
+        compressed = CompressedGraph.of(index);
+        graph = compressed;
+        if (!keepIndex) {
+            index = null;
+        }
+        if (context != null) {
+            int[] newIds = new int[old.size()];
+            for (int i = 0; i < newIds.length; i++) {
+                newIds[i] = vocabulary.id(old.label(i));
+            }
+            context = context.remap(newIds, vocabulary.size());
+        }
+    }
+    
+    /**
+     * Shrink the affinity graph by dropping rarely used adjacencies: edges of
+     * weight below minWeight and all but the topK heaviest edges out of each
+     * word, then words left with no edges. Poems may lose bridge words that
+     * only the removed edges provided. Must not be called while another
+     * thread is generating a poem.
+     * 
+     * @param minWeight edges with weight below this are removed
+     * @param topK maximum number of edges kept out of each word, >= 1
+     * @return report of what was removed
+     */
+    public GraphCompaction.Report compact(int minWeight, int topK) {
+        //graph is immutable once indexed: compact a mutable copy, merged in one pass
+        Map<String, Map<String, Integer>> edges = new HashMap<>();
+        for (String word : graph.vertices()) {
+            edges.put(word, graph.targets(word));
+        }
+        BulkGraph<String> copy = new ConcreteVerticesGraph();
+        copy.merge(edges, (current, merged) -> merged);
+        GraphCompaction.Report report = GraphCompaction.compact(copy, minWeight, topK);
+        graph = copy;
+        reindex();
+        if (search != null) {
+            search = search.over(graph);
+        }
+        checkRep();
+        return report;
+    }
+    
+    /**
+     * Build a compact probabilistic index that lets this poet skip the bridge
+     * search for word pairs with no two-edge path between them. The index
+     * never hides a real bridge, so poems are unchanged. It is consulted
+     * only for single bridge words, not by the multi-word bridge search.
+     * Must not be called while another thread is generating a poem.
+     * 
+     * @param falsePositiveRate target fraction of bridgeless pairs that still
+     *        get searched, 0 < rate < 1
+     * @param maxBytes memory budget for the index, >= 64; if the target rate
+     *        would need more, the rate achieved is higher (see {@link #stats()})
+     */
+    public void enableBridgeFilter(double falsePositiveRate, long maxBytes) {
+        IndexedGraph<String> snapshot = index != null ? index : IndexedGraph.of(compressed, vocabulary.labels(), vocabulary::id);
+        filter = TwoHopFilter.build(snapshot, falsePositiveRate, maxBytes);
+        filterRate = falsePositiveRate;
+        filterBudget = maxBytes;
+        checkRep();
+    }
+    
+    /**
+     * Drop the adjacency index used for single bridge words and use the
+     * copy compressed to a few bytes per edge, which this poet keeps as its
+     * affinity graph, instead of the 24 bytes per edge of the default index.
+     * Poems are unchanged; lookups decode adjacency lists
+     * instead of reading arrays, so they are somewhat slower, especially for
+     * pairs involving very frequent words. Stays in effect after
+     * {@link #compact(int, int)}. Must not be called while another thread is
+     * generating a poem.
+     * 
+     * @return memory used by the compressed adjacency lists, in bytes
+     */
+    public long compressIndex() {
+        index = null;
+        checkRep();
+        return compressed.byteSize();
+    }
+    
+    /**
+     * @return counts of bridge lookups made so far and the size and
+     *         estimated accuracy of the bridge filter, if enabled
+     */
+    public PoetStats stats() {
+        TwoHopFilter current = filter;
+        return new PoetStats(pairsQueried.sum(), pairsRejected.sum(), bridgesFound.sum(),
+                current == null ? 0 : current.byteSize(),
+                current == null ? 0 : current.insertions(),
+                current == null ? 0 : current.expectedFalsePositiveRate());
     }
     
     private void checkRep() {
@@ -99,6 +309,9 @@ public class GraphPoet {
                 assert edge.getValue() > 0;
             }
         }
+        assert graph == compressed;
+        assert index == null || index.size() == compressed.size();
+        assert vocabulary.size() == compressed.size();
     }
     
     /**
@@ -108,40 +321,119 @@ public class GraphPoet {
      * @return poem (as described above)
      */
     public String poem(String input) {
-        String[] words = input.split("\\s+");
+        String[] words = words(input);
         StringBuilder poem = new StringBuilder();//mutable string object to allow bridge word addition
+        int[] history = new int[words.length];//ids of the lower-case words written so far, for the context model
+        int written = 0;
         
         for (int i = 0; i < words.length - 1; i++) {
             String word1 = words[i];
             String word2 = words[i + 1];
-            String bridge = findBridgeWord(word1.toLowerCase(), word2.toLowerCase());
             poem.append(word1).append(" ");
-            if (bridge != null) {
+            history = record(history, written++, word1.toLowerCase());
+            for (String bridge : findBridge(history, written, word1.toLowerCase(), word2.toLowerCase())) {
                 poem.append(bridge).append(" ");
+                history = record(history, written++, bridge);
             }
         }
         poem.append(words[words.length - 1]); // add adjacent word to complete the string
         
         return poem.toString();
     }
-    private String findBridgeWord(String word1, String word2) {
-        String bestBridge = null;
-        int maxWeight = 0;
-        
-        Map<String, Integer> targets = graph.targets(word1);// Get all direct neighbors of word1 along with their weights
-        for (Map.Entry<String, Integer> entry : targets.entrySet()) {
-            String candidate = entry.getKey();
-            int weight1 = entry.getValue();
-         // Check if there is an edge from the candidate to word2
-            int weight2 = graph.targets(candidate).getOrDefault(word2, 0);
-            int totalWeight = weight1 + weight2;
-            
-            if (weight2 > 0 && totalWeight > maxWeight) {//altering best bridge word found
-                maxWeight = totalWeight;
-                bestBridge = candidate;
+    //true if bridges depend on the words before each pair, so they cannot be shared between poems
+    boolean usesContext() {
+        return context != null;
+    }
+    
+    //the words of an input, split as poem() splits them
+    static String[] words(String input) {
+        return input.split("\\s+");
+    }
+    
+    //bridge words between a pair of lower-case words, ignoring any context model; counted in stats()
+    List<String> bridge(String word1, String word2) {
+        return findBridge(new int[0], 0, word1, word2);
+    }
+    
+    //poem with the bridge words bridges.apply(lower-case word1, lower-case word2) for each
+    //adjacent pair; the same as poem(input) when bridges is bridge() and there is no context model
+    String poem(String input, BiFunction<String, String, List<String>> bridges) {
+        String[] words = words(input);
+        StringBuilder poem = new StringBuilder();
+        for (int i = 0; i < words.length - 1; i++) {
+            poem.append(words[i]).append(" ");
+            for (String bridge : bridges.apply(words[i].toLowerCase(), words[i + 1].toLowerCase())) {
+                poem.append(bridge).append(" ");
             }
         }
-        return bestBridge;
+        poem.append(words[words.length - 1]);
+        return poem.toString();
+    }
+    
+    //store the id of a written word at history[position], growing history if needed
+    private int[] record(int[] history, int position, String word) {
+        if (context == null) {
+            return history;
+        }
+        int[] result = position < history.length ? history : Arrays.copyOf(history, history.length * 2 + 1);
+        result[position] = vocabulary.id(word);
+        return result;
+    }
+    
+    //bridge words between a pair, in order; empty if there are none
+    //history[0..written) holds the ids of the words before word2, ending with word1
+    private List<String> findBridge(int[] history, int written, String word1, String word2) {
+        pairsQueried.increment();
+        List<String> bridge;
+        if (search != null) {
+            bridge = search.find(word1, word2);
+        } else if (context != null) {
+            String word = findContextBridgeWord(history, written, word1, word2);
+            bridge = word == null ? Collections.<String>emptyList() : Collections.singletonList(word);
+        } else {
+            String word = findBridgeWord(word1, word2);
+            bridge = word == null ? Collections.<String>emptyList() : Collections.singletonList(word);
+        }
+        if (!bridge.isEmpty()) {
+            bridgesFound.increment();
+        }
+        return bridge;
+    }
+    
+    //heaviest two-edge path word1 -> bridge -> word2, via sorted adjacency intersection
+    private String findBridgeWord(String word1, String word2) {
+        int from = vocabulary.id(word1);
+        int to = vocabulary.id(word2);
+        if (from < 0 || to < 0) {
+            return null;
+        }
+        if (filter != null && !filter.mightHaveBridge(from, to)) {
+            pairsRejected.increment();
+            return null;
+        }
+        int bridge = index != null ? BridgeWords.best(index, from, to) : BridgeWords.best(compressed, from, to);
+        return bridge < 0 ? null : vocabulary.label(bridge);
+    }
+    
+    //best bridge word by edge weights plus the counts of the longer n-grams it completes
+    private String findContextBridgeWord(int[] history, int written, String word1, String word2) {
+        int from = vocabulary.id(word1);
+        int to = vocabulary.id(word2);
+        if (from < 0 || to < 0) {
+            return null;
+        }
+        if (filter != null && !filter.mightHaveBridge(from, to)) {
+            pairsRejected.increment();
+            return null;
+        }
+        IntToLongFunction bonus = candidate -> context.contextCount(history, written, candidate, to);
+        // history ends with word1, so each of the order-2 n-grams ending in the bridge b occurs
+        // at most weight(word1, b) times, and each of the order-2 ending in b, word2 at most
+        // weight(b, word2) times: the bonus is at most (order-2) times the two edge weights
+        int bridge = index != null
+                ? BridgeWords.best(index, from, to, bonus, context.order() - 2)
+                : BridgeWords.best(compressed, from, to, bonus);
+        return bridge < 0 ? null : vocabulary.label(bridge);
     }
     
     // TODO toString()
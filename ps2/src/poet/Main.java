@@ -14,12 +14,31 @@ import java.io.IOException;
 public class Main {
     
     /**
-     * Generate example poetry.
+     * Generate example poetry, or serve poems over HTTP.
      * 
-     * @param args unused
-     * @throws IOException if a poet corpus file cannot be found or read
+     * @param args empty to print an example poem; or {@code --serve [port [corpus]]}
+     *        to serve poems on the loopback interface until the process is
+     *        stopped (see {@link PoemServer}, and {@link PoemLoadClient} to load test it)
+     * @throws IOException if a poet corpus file cannot be found or read, or
+     *         the port cannot be bound
+     * @throws InterruptedException if interrupted while serving
      */
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            File corpus = new File(args.length > 2 ? args[2] : "src/poet/mugar-omni-theater.txt");
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                // read once when the JDK server starts; small responses otherwise wait out Nagle's
+                // algorithm against delayed ACKs, ~40ms each
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            PoemServer server = PoemServer.start(new GraphPoet(corpus), port,
+                    2 * Runtime.getRuntime().availableProcessors(), 500, 256);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server)));
+            System.out.println("Serving poems on http://127.0.0.1:" + server.port() + "/poem?input=...");
+            Thread.currentThread().join();
+            return;
+        }
         final GraphPoet nimoy = new GraphPoet(new File("src/poet/mugar-omni-theater.txt"));
         final String input = "Test the system.";
         System.out.println(input + "\n>>>\n" + nimoy.poem(input));
@@ -0,0 +1,219 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+/**
+ * Counts of word n-grams of orders 3..order, keyed by word ids.
+ *
+ * <p>Each n-gram is packed into one long, (id + 1) per word in a fixed number
+ * of bits, and counted in an open-addressed table of parallel long/int
+ * arrays, so a distinct n-gram costs 24 to 48 bytes and no objects.
+ * Bigrams are not stored here; they are the edges of the affinity graph.
+ * Mutable while counting, then only read.
+ */
+class NGramModel {
+
+    private static final long EMPTY = 0;
+
+    private final int order;
+    private final int bits;
+    private long[] keys = new long[1024];
+    private int[] counts = new int[1024];
+    private int size = 0;
+
+    // Abstraction function:
+    //   represents the map from each packed n-gram keys[i] != EMPTY to counts[i]
+    // Representation invariant:
+    //   3 <= order, order * bits <= 63; keys.length == counts.length is a power of two
+    //   size == number of non-EMPTY keys, and size <= keys.length / 2
+    //   no EMPTY slot lies between a key's home slot and the slot holding it
+    // Safety from rep exposure:
+    //   arrays are private and never returned
+
+    /**
+     * Create an empty model.
+     *
+     * @param order longest n-gram counted, >= 3
+     * @param vocabularySize number of distinct word ids; ids are 0..vocabularySize-1
+     * @throws IllegalArgumentException if n-grams of that order over that
+     *         vocabulary do not fit in 63 bits
+     */
+    NGramModel(int order, int vocabularySize) {
+        this.order = order;
+        this.bits = 64 - Long.numberOfLeadingZeros(vocabularySize + 1L);
+        if (order < 3 || (long) order * bits > 63) {
+            throw new IllegalArgumentException("Order " + order + " does not fit a vocabulary of "
+                    + vocabularySize + " words.");
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert keys.length == counts.length && Integer.bitCount(keys.length) == 1;
+        assert size <= keys.length / 2;
+    }
+
+    /**
+     * @return longest n-gram counted
+     */
+    int order() {
+        return order;
+    }
+
+    /**
+     * Count every n-gram of orders 3..order in a sequence of word ids.
+     *
+     * @param ids word ids, in text order
+     */
+    void countAll(int[] ids) {
+        for (int end = 3; end <= ids.length; end++) {
+            long key = 0;
+            // extend backwards from position end-1 so each order reuses the previous key
+            for (int length = 1; length <= order && length <= end; length++) {
+                key |= (ids[end - length] + 1L) << (bits * (length - 1));
+                if (length >= 3) {
+                    increment(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sum the counts of every n-gram of order 3..order that inserting bridge
+     * between the last word of history and next would complete: those
+     * ending in bridge and those ending in bridge, next.
+     *
+     * @param history ids of the words before bridge, most recent last; -1 for unknown words
+     * @param length number of valid entries at the start of history
+     * @param bridge id of the candidate bridge word
+     * @param next id of the word after bridge
+     * @return total count of those n-grams
+     */
+    long contextCount(int[] history, int length, int bridge, int next) {
+        long total = 0;
+        long endingInBridge = bridge + 1L;
+        long endingInNext = (next + 1L) | ((bridge + 1L) << bits);
+        for (int k = 1; k < order && k <= length; k++) {
+            int id = history[length - k];
+            if (id < 0) {
+                break; // unknown word: no longer n-gram through it was counted
+            }
+            endingInBridge |= (id + 1L) << (bits * k);
+            if (k >= 2) {
+                total += get(endingInBridge);
+            }
+            if (k + 2 <= order) {
+                endingInNext |= (id + 1L) << (bits * (k + 1));
+                total += get(endingInNext);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Renumber the words of this model, dropping n-grams with words that
+     * have no new id.
+     *
+     * @param newIds new id of each old word id, or -1 if the word is gone
+     * @param vocabularySize number of distinct new word ids
+     * @return model with the same order and the surviving counts
+     */
+    NGramModel remap(int[] newIds, int vocabularySize) {
+        NGramModel remapped = new NGramModel(order, vocabularySize);
+        long wordMask = (1L << bits) - 1;
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            long newKey = 0;
+            for (int position = 0; key != 0; position++, key >>>= bits) {
+                int id = newIds[(int) (key & wordMask) - 1];
+                if (id < 0) {
+                    newKey = EMPTY;
+                    break;
+                }
+                newKey |= (id + 1L) << (remapped.bits * position);
+            }
+            if (newKey != EMPTY) {
+                remapped.add(newKey, counts[i]);
+            }
+        }
+        return remapped;
+    }
+
+    /**
+     * @return number of distinct n-grams counted
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate heap bytes used by the table
+     */
+    long byteSize() {
+        return 12L * keys.length;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return counts[i];
+            }
+        }
+        return 0;
+    }
+
+    private void increment(long key) {
+        add(key, 1);
+    }
+
+    private void add(long key, int count) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                counts[i] = (int) Math.min(Integer.MAX_VALUE, (long) counts[i] + count);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        counts[i] = count;
+        if (++size > keys.length / 2) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NGramModel: order " + order + ", " + size + " n-grams, " + byteSize() + " bytes";
+    }
+
+}
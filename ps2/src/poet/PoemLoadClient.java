@@ -0,0 +1,181 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for {@link PoemServer}: sends poem requests to a server on
+ * this machine from several threads at once and reports the latency and
+ * throughput seen by the clients.
+ */
+public class PoemLoadClient {
+
+    private PoemLoadClient() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Run a load test against a local PoemServer and print the client's and
+     * the server's statistics.
+     *
+     * @param args port, number of concurrent clients, total number of
+     *             requests, then optionally the inputs to cycle through
+     * @throws IOException if the server's statistics cannot be fetched
+     * @throws InterruptedException if interrupted while waiting for clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: PoemLoadClient port concurrency requests [input...]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        List<String> inputs = args.length > 3
+                ? Arrays.asList(args).subList(3, args.length)
+                : Arrays.asList("Test the system.", "Test the sound system.", "This is a test of the theater.");
+        Result result = run(port, inputs, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        System.out.println("client: " + result);
+        System.out.print("server: " + get(port, "/stats").body);
+    }
+
+    /**
+     * Send requests to a local PoemServer and measure their latency.
+     *
+     * @param port port of a PoemServer on the loopback interface
+     * @param inputs poem inputs, sent in turn; nonempty
+     * @param concurrency number of client threads, each with one request outstanding, >= 1
+     * @param requests total number of requests, >= 0
+     * @return latency percentiles, throughput and error count
+     * @throws InterruptedException if interrupted while waiting for clients
+     */
+    public static Result run(int port, List<String> inputs, int concurrency, int requests)
+            throws InterruptedException {
+        if (inputs.isEmpty() || concurrency < 1 || requests < 0) {
+            throw new IllegalArgumentException("Need inputs, clients and a request count.");
+        }
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            Thread client = new Thread(() -> {
+                for (int i; (i = next.getAndIncrement()) < requests; ) {
+                    long sent = System.nanoTime();
+                    try {
+                        String input = URLEncoder.encode(inputs.get(i % inputs.size()), "UTF-8");
+                        if (get(port, "/poem?input=" + input).status != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - sent;
+                }
+            }, "poem-load-client-" + c);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        return new Result(requests, errors.get(), PoemServer.percentile(latencies, 0.5) / 1000,
+                PoemServer.percentile(latencies, 0.99) / 1000, requests / seconds);
+    }
+
+    private static Response get(int port, String path) throws IOException {
+        // reading the body to the end and closing it, without disconnect(), keeps the connection alive for reuse
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        int status = connection.getResponseCode();
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        StringBuilder text = new StringBuilder();
+        if (body != null) {
+            try (InputStream in = body) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    text.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return new Response(status, text.toString());
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Immutable result of a load test, as seen by the clients.
+     */
+    public static final class Result {
+
+        private final long requests;
+        private final long errors;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final double requestsPerSecond;
+
+        // Rep invariant:
+        //   0 <= errors <= requests, p50Micros <= p99Micros
+
+        private Result(long requests, long errors, long p50Micros, long p99Micros, double requestsPerSecond) {
+            this.requests = requests;
+            this.errors = errors;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        /** @return number of requests sent */
+        public long requests() {
+            return requests;
+        }
+
+        /** @return number of requests that failed or got a status other than 200 */
+        public long errors() {
+            return errors;
+        }
+
+        /** @return median round-trip latency, in microseconds */
+        public long p50Micros() {
+            return p50Micros;
+        }
+
+        /** @return 99th percentile round-trip latency, in microseconds */
+        public long p99Micros() {
+            return p99Micros;
+        }
+
+        /** @return requests completed per second */
+        public double requestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "requests " + requests + ", errors " + errors + ", p50 " + p50Micros + "us, p99 "
+                    + p99Micros + "us, " + String.format("%.1f", requestsPerSecond) + " requests/s";
+        }
+
+    }
+
+}
@@ -0,0 +1,495 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A loopback HTTP server that writes poems with one GraphPoet, loaded once.
+ *
+ * <p>{@code GET /poem?input=...}, or {@code POST /poem} with the input as the
+ * UTF-8 request body, returns the poem as plain text. {@code GET /stats}
+ * returns the request count, median and 99th percentile latency, and
+ * throughput since the server started.
+ *
+ * <p>Requests are accepted on a fixed pool of threads, which hand each input
+ * to a batcher and return at once; the response is written on the same pool
+ * when the poem is ready, so the number of requests in flight is bounded by
+ * the queue, not by the number of threads. The batcher collects the requests
+ * arriving within a short window, looks up the bridge for each distinct
+ * adjacent word pair once for the whole batch, and assembles every poem from
+ * those shared lookups; popular inputs and common word pairs are therefore
+ * bridged once per batch instead of once per request. A poet with a context
+ * model chooses bridges from each poem's own history, so its requests are
+ * batched but their lookups are not shared. A request that fails fails
+ * alone; the rest of its batch is still served.
+ *
+ * <p>Responses are small, so the JDK server should be launched with
+ * {@code -Dsun.net.httpserver.nodelay=true}; otherwise each waits out Nagle's
+ * algorithm against the client's delayed ACK, about 40ms. {@link Main} sets
+ * it for {@code --serve}.
+ */
+public class PoemServer implements Closeable {
+
+    private static final int MAX_QUEUED = 10_000;
+    private static final int LATENCY_SAMPLES = 1 << 16;
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+    // resolve a batch's distinct pairs in parallel once there are this many
+    private static final int PARALLEL_PAIRS = 64;
+
+    private final GraphPoet poet;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final Thread batcher;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final Set<CompletableFuture<?>> responding = ConcurrentHashMap.newKeySet();
+    private final long windowNanos;
+    private final int maxBatch;
+    private volatile boolean running = true;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder pairsRequested = new LongAdder();
+    private final LongAdder pairsLookedUp = new LongAdder();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latenciesRecorded = 0;
+
+    // Abstraction function:
+    //   represents a running server on server's address generating poems with
+    //   poet; requests accepted but not yet batched are in queue, and the
+    //   responses of queued requests not yet written are in responding
+    // Representation invariant:
+    //   windowNanos >= 0, maxBatch >= 1
+    //   latencies[i % LATENCY_SAMPLES] for the last min(latenciesRecorded,
+    //     LATENCY_SAMPLES) values of i below latenciesRecorded are the latest
+    //     request latencies in nanoseconds; guarded by latencies
+    // Safety from rep exposure:
+    //   all fields are private; stats() returns an immutable snapshot
+
+    private PoemServer(GraphPoet poet, HttpServer server, int threads, long windowNanos, int maxBatch) {
+        this.poet = poet;
+        this.server = server;
+        this.windowNanos = windowNanos;
+        this.maxBatch = maxBatch;
+        this.handlers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "poem-server-handler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batcher = new Thread(this::runBatcher, "poem-server-batcher");
+        batcher.setDaemon(true);
+    }
+
+    /**
+     * Start serving poems on the loopback interface.
+     *
+     * @param poet poet to write every poem; must not be changed while the server runs
+     * @param port TCP port, or 0 for any free port (see {@link #port()})
+     * @param threads number of threads accepting requests and writing responses, >= 1
+     * @param batchWindowMicros how long the batcher waits for more requests
+     *        after the first of a batch, in microseconds, >= 0
+     * @param maxBatch maximum requests per batch, >= 1
+     * @return running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static PoemServer start(GraphPoet poet, int port, int threads, long batchWindowMicros, int maxBatch)
+            throws IOException {
+        if (port < 0 || port > 0xFFFF || threads < 1 || batchWindowMicros < 0 || maxBatch < 1) {
+            throw new IllegalArgumentException("Invalid port, thread count, batch window or batch size.");
+        }
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        PoemServer server = new PoemServer(poet, http, threads, TimeUnit.MICROSECONDS.toNanos(batchWindowMicros),
+                maxBatch);
+        http.createContext("/poem", server::handlePoem);
+        http.createContext("/stats", server::handleStats);
+        http.setExecutor(server.handlers);
+        server.batcher.start();
+        http.start();
+        return server;
+    }
+
+    /**
+     * @return TCP port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return request counts, latency percentiles and throughput so far
+     */
+    public Stats stats() {
+        long[] sample;
+        synchronized (latencies) {
+            sample = Arrays.copyOf(latencies, (int) Math.min(latenciesRecorded, LATENCY_SAMPLES));
+        }
+        Arrays.sort(sample);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return new Stats(served.sum(), failed.sum(), batches.sum(), pairsRequested.sum(), pairsLookedUp.sum(),
+                percentile(sample, 0.5) / 1000, percentile(sample, 0.99) / 1000, served.sum() / seconds);
+    }
+
+    /**
+     * Stop accepting requests, answer those still queued with 503 Service
+     * Unavailable, and stop all threads.
+     */
+    @Override
+    public void close() {
+        running = false;
+        batcher.interrupt();
+        try {
+            batcher.join(TimeUnit.SECONDS.toMillis(REQUEST_TIMEOUT_SECONDS));
+            for (Request request; (request = queue.poll()) != null; ) {
+                request.poem.completeExceptionally(new IllegalStateException("Server stopped."));
+            }
+            // the failed requests respond on the handler threads, and stopping the
+            // server closes their connections, so wait for every response first
+            CompletableFuture.allOf(responding.toArray(new CompletableFuture<?>[0]))
+                    .get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // finish() handles its own errors; a response still pending is cut off below
+        }
+        server.stop(0);
+        handlers.shutdown();
+        try {
+            if (!handlers.awaitTermination(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                handlers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            handlers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Value at a fraction of the way through sorted values, or 0 if there are none.
+     */
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private void handlePoem(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        boolean queued = false;
+        try {
+            String input;
+            if ("GET".equals(exchange.getRequestMethod())) {
+                input = queryParameter(exchange.getRequestURI().getRawQuery(), "input");
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                input = new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            } else {
+                respond(exchange, 405, "Use GET or POST.\n");
+                return;
+            }
+            if (input == null) {
+                respond(exchange, 400, "Missing input parameter.\n");
+                return;
+            }
+            if (GraphPoet.words(input).length == 0) {
+                respond(exchange, 400, "Input has no words.\n");
+                return;
+            }
+            Request request = new Request(input);
+            if (!running || !queue.offer(request)) {
+                failed.increment();
+                respond(exchange, 503, "Server busy.\n");
+                return;
+            }
+            queued = true;
+            // respond when the batcher is done, without holding this thread until then
+            CompletableFuture<String> response =
+                    request.poem.whenCompleteAsync((poem, error) -> finish(exchange, start, poem, error), handlers);
+            responding.add(response);
+            response.whenComplete((done, error) -> responding.remove(response));
+        } finally {
+            if (!queued) {
+                exchange.close();
+            }
+        }
+    }
+
+    /*
+     * Count a queued request, then send its poem or error and close the exchange.
+     * Counted first, so a client that has its response also sees it in stats().
+     */
+    private void finish(HttpExchange exchange, long start, String poem, Throwable error) {
+        try {
+            if (error == null) {
+                served.increment();
+                recordLatency(System.nanoTime() - start);
+                respond(exchange, 200, poem);
+            } else if (!running) {
+                failed.increment();
+                respond(exchange, 503, "Server stopping.\n");
+            } else {
+                failed.increment();
+                respond(exchange, 500, "Could not write poem.\n");
+            }
+        } catch (IOException e) {
+            // the client has gone; nothing left to tell it
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, stats() + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latenciesRecorded++ % LATENCY_SAMPLES)] = nanos;
+        }
+    }
+
+    private void runBatcher() {
+        List<Request> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                serve(batch);
+            } catch (InterruptedException e) {
+                for (Request request : batch) {
+                    request.poem.completeExceptionally(new IllegalStateException("Server stopped."));
+                }
+                break;
+            } catch (RuntimeException e) {
+                for (Request request : batch) {
+                    request.poem.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void serve(List<Request> batch) {
+        batches.increment();
+        if (poet.usesContext()) {
+            for (Request request : batch) {
+                complete(request, () -> poet.poem(request.input));
+            }
+            return;
+        }
+        // distinct lower-case pairs of the batch, keyed by "word1 word2"; words contain no spaces
+        Map<String, String[]> pairs = new LinkedHashMap<>();
+        for (Request request : batch) {
+            String[] words = GraphPoet.words(request.input);
+            for (int i = 0; i < words.length - 1; i++) {
+                String word1 = words[i].toLowerCase();
+                String word2 = words[i + 1].toLowerCase();
+                pairs.putIfAbsent(word1 + " " + word2, new String[] { word1, word2 });
+            }
+            pairsRequested.add(Math.max(0, words.length - 1));
+        }
+        pairsLookedUp.add(pairs.size());
+        Stream<Map.Entry<String, String[]>> lookups = pairs.entrySet().stream();
+        if (pairs.size() >= PARALLEL_PAIRS) {
+            lookups = lookups.parallel();
+        }
+        Map<String, List<String>> bridges = lookups.collect(Collectors.toMap(
+                Map.Entry::getKey, pair -> poet.bridge(pair.getValue()[0], pair.getValue()[1])));
+        for (Request request : batch) {
+            complete(request, () -> poet.poem(request.input, (word1, word2) -> bridges.get(word1 + " " + word2)));
+        }
+    }
+
+    /*
+     * Complete one request of a batch with its poem, or with the exception
+     * writing it threw, without affecting the rest of the batch.
+     */
+    private static void complete(Request request, Supplier<String> poem) {
+        try {
+            request.poem.complete(poem.get());
+        } catch (RuntimeException e) {
+            request.poem.completeExceptionally(e);
+        }
+    }
+
+    private static String queryParameter(String rawQuery, String name) throws UnsupportedEncodingException {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String key = equals < 0 ? parameter : parameter.substring(0, equals);
+            if (URLDecoder.decode(key, "UTF-8").equals(name)) {
+                return equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PoemServer on port " + port() + ": " + stats();
+    }
+
+    /*
+     * One poem request waiting for the batcher.
+     */
+    private static class Request {
+        private final String input;
+        private final CompletableFuture<String> poem = new CompletableFuture<>();
+
+        Request(String input) {
+            this.input = input;
+        }
+    }
+
+    /**
+     * Immutable snapshot of a PoemServer's counters and latencies.
+     */
+    public static final class Stats {
+
+        private final long requests;
+        private final long failures;
+        private final long batches;
+        private final long pairsRequested;
+        private final long pairsLookedUp;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final double requestsPerSecond;
+
+        // Rep invariant:
+        //   all counts >= 0; pairsLookedUp <= pairsRequested unless the poet uses context
+        //   p50Micros <= p99Micros
+
+        private Stats(long requests, long failures, long batches, long pairsRequested, long pairsLookedUp,
+                long p50Micros, long p99Micros, double requestsPerSecond) {
+            this.requests = requests;
+            this.failures = failures;
+            this.batches = batches;
+            this.pairsRequested = pairsRequested;
+            this.pairsLookedUp = pairsLookedUp;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        /** @return number of poems served */
+        public long requests() {
+            return requests;
+        }
+
+        /** @return number of poem requests rejected or failed */
+        public long failures() {
+            return failures;
+        }
+
+        /** @return number of batches the batcher has served */
+        public long batches() {
+            return batches;
+        }
+
+        /** @return number of adjacent word pairs in the batched inputs */
+        public long pairsRequested() {
+            return pairsRequested;
+        }
+
+        /** @return number of bridge lookups made for them, after sharing within batches */
+        public long pairsLookedUp() {
+            return pairsLookedUp;
+        }
+
+        /** @return median latency of recent poems, in microseconds */
+        public long p50Micros() {
+            return p50Micros;
+        }
+
+        /** @return 99th percentile latency of recent poems, in microseconds */
+        public long p99Micros() {
+            return p99Micros;
+        }
+
+        /** @return poems served per second since the server started */
+        public double requestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "requests " + requests + ", failures " + failures + ", batches " + batches
+                    + ", pairs " + pairsRequested + " (" + pairsLookedUp + " looked up)"
+                    + ", p50 " + p50Micros + "us, p99 " + p99Micros + "us, "
+                    + String.format("%.1f", requestsPerSecond) + " requests/s";
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+/**
+ * Immutable snapshot of a GraphPoet's counters and index sizes.
+ */
+public final class PoetStats {
+
+    private final long pairsQueried;
+    private final long pairsRejectedByFilter;
+    private final long bridgesFound;
+    private final long filterBytes;
+    private final long filterInsertions;
+    private final double filterFalsePositiveRate;
+
+    // Rep invariant:
+    //   all counts >= 0; pairsRejectedByFilter + bridgesFound <= pairsQueried
+    //   filterBytes == 0 iff no filter, in which case the other filter fields are 0
+
+    PoetStats(long pairsQueried, long pairsRejectedByFilter, long bridgesFound,
+            long filterBytes, long filterInsertions, double filterFalsePositiveRate) {
+        this.pairsQueried = pairsQueried;
+        this.pairsRejectedByFilter = pairsRejectedByFilter;
+        this.bridgesFound = bridgesFound;
+        this.filterBytes = filterBytes;
+        this.filterInsertions = filterInsertions;
+        this.filterFalsePositiveRate = filterFalsePositiveRate;
+    }
+
+    /** @return number of adjacent word pairs a bridge was looked up for */
+    public long pairsQueried() {
+        return pairsQueried;
+    }
+
+    /** @return number of those pairs the bridge filter ruled out without a search */
+    public long pairsRejectedByFilter() {
+        return pairsRejectedByFilter;
+    }
+
+    /** @return number of those pairs for which a bridge was inserted */
+    public long bridgesFound() {
+        return bridgesFound;
+    }
+
+    /** @return memory used by the bridge filter in bytes, or 0 if it is disabled */
+    public long filterBytes() {
+        return filterBytes;
+    }
+
+    /** @return number of two-edge paths inserted into the bridge filter */
+    public long filterInsertions() {
+        return filterInsertions;
+    }
+
+    /** @return estimated false positive rate of the bridge filter, or 0 if it is disabled */
+    public double filterFalsePositiveRate() {
+        return filterFalsePositiveRate;
+    }
+
+    @Override
+    public String toString() {
+        return "PoetStats: " + pairsQueried + " pairs, " + bridgesFound + " bridged, "
+                + pairsRejectedByFilter + " rejected by filter; filter " + filterBytes + " bytes, "
+                + filterInsertions + " insertions, ~" + filterFalsePositiveRate + " false positives";
+    }
+
+}
@@ -0,0 +1,209 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for the bulk operations of BulkGraph.
+ * 
+ * This class runs the GraphInstanceTest tests, as well as tests against the
+ * BulkGraph spec, against each concrete graph.
+ * 
+ * Tests for one particular implementation should be in its own test class.
+ */
+public abstract class BulkGraphTest extends GraphInstanceTest {
+    
+    /**
+     * Overridden by implementation-specific test classes.
+     * 
+     * @return a new empty graph of the particular implementation being tested
+     */
+    @Override public abstract BulkGraph<String> emptyInstance();
+    
+    // Testing strategy for BulkGraph.edges()
+    //   graph: empty, several vertices with and without edges, many edges
+    //   stream: sequential, parallel
+    
+    @Test
+    public void testEdgesEmpty() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.add("a");
+        assertEquals(0, graph.edgeCount());
+        assertEquals(0, graph.edges(false).count());
+    }
+    
+    @Test
+    public void testEdgesSequential() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 2);
+        graph.set("a", "c", 3);
+        graph.set("c", "a", 1);
+        graph.add("d");
+        Set<WeightedEdge<String>> expected = new HashSet<>();
+        expected.add(new WeightedEdge<>("a", "b", 2));
+        expected.add(new WeightedEdge<>("a", "c", 3));
+        expected.add(new WeightedEdge<>("c", "a", 1));
+        assertEquals(3, graph.edgeCount());
+        assertEquals(expected, graph.edges(false).collect(Collectors.toSet()));
+    }
+    
+    @Test
+    public void testEdgesParallelSplitsExactly() {
+        BulkGraph<String> graph = emptyInstance();
+        long expectedWeight = 0;
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < i % 7; j++) {
+                graph.set("v" + i, "v" + (i + j + 1), j + 1);
+                expectedWeight += j + 1;
+            }
+        }
+        Spliterator<WeightedEdge<String>> all = graph.edges(false).spliterator();
+        assertTrue(all.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertEquals(graph.edgeCount(), all.estimateSize());
+        Spliterator<WeightedEdge<String>> half = all.trySplit();
+        assertNotNull(half);
+        assertEquals(graph.edgeCount(), half.estimateSize() + all.estimateSize());
+        
+        assertEquals(graph.edgeCount(), graph.edges(true).count());
+        assertEquals(expectedWeight, graph.edges(true).mapToLong(WeightedEdge::weight).sum());
+        assertEquals(graph.edges(false).collect(Collectors.toSet()),
+                graph.edges(true).collect(Collectors.toSet()));
+    }
+    
+    // Testing strategy for BulkGraph.removeAll(), removeIf()
+    //   removed vertices: none, some, all, labels not in the graph
+    //   removed vertex is: source, target, both, isolated
+    
+    @Test
+    public void testRemoveAllNone() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 1);
+        assertEquals(0, graph.removeAll(Arrays.asList("x", "y")));
+        assertEquals(0, graph.removeAll(Collections.<String>emptyList()));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(1, graph.edgeCount());
+    }
+    
+    @Test
+    public void testRemoveAllIncidentEdges() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "the", 1);
+        graph.set("the", "b", 2);
+        graph.set("a", "b", 3);
+        graph.set("b", "of", 4);
+        graph.set("of", "of", 5);
+        graph.add("isolated");
+        assertEquals(3, graph.removeAll(Arrays.asList("the", "of", "isolated", "missing")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(Collections.singletonMap("b", 3), graph.targets("a"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+        assertEquals(1, graph.edgeCount());
+    }
+    
+    @Test
+    public void testRemoveIfAll() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 1);
+        Set<String> tested = new HashSet<>();
+        assertEquals(3, graph.removeIf(label -> tested.add(label)));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), tested);
+        assertEquals(Collections.emptySet(), graph.vertices());
+        assertEquals(0, graph.edgeCount());
+    }
+    
+    // Testing strategy for BulkGraph.merge()
+    //   merged edge: new, existing and reweighted, existing and unchanged, combined to 0
+    //   merged labels: existing vertices, new vertices, null source
+    //   weights: valid, negative
+    //   invalid edge after valid ones: graph unchanged
+    //   combine: returns >= 0, returns negative after valid results (graph unchanged)
+    
+    @Test
+    public void testMerge() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 2);
+        graph.set("b", "c", 3);
+        graph.set("c", "a", 1);
+        Map<String, Map<String, Integer>> edges = new HashMap<>();
+        edges.put("a", new HashMap<>());
+        edges.get("a").put("b", 5);
+        edges.get("a").put("d", 4);
+        edges.put("b", Collections.singletonMap("c", 3));
+        edges.put("c", Collections.singletonMap("a", 1));
+        edges.put("e", Collections.<String, Integer>emptyMap());
+        // keep the larger weight, but remove edges whose weights agree
+        assertEquals(4, graph.merge(edges, (current, merged) -> current == merged ? 0 : Math.max(current, merged)));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e")), graph.vertices());
+        Map<String, Integer> targets = new HashMap<>();
+        targets.put("b", 5);
+        targets.put("d", 4);
+        assertEquals(targets, graph.targets("a"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+        assertEquals(Collections.emptyMap(), graph.sources("a"));
+        assertEquals(2, graph.edgeCount());
+        assertEquals(0, graph.merge(Collections.singletonMap("a", Collections.singletonMap("b", 5)), Math::max));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testMergeNegativeWeight() {
+        emptyInstance().merge(Collections.singletonMap("a", Collections.singletonMap("b", -1)), Integer::sum);
+    }
+    
+    @Test
+    public void testMergeInvalidLeavesGraphUnchanged() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 1);
+        Map<String, Map<String, Integer>> edges = new LinkedHashMap<>();
+        edges.put("c", Collections.singletonMap("d", 1));
+        edges.put("e", Collections.singletonMap("f", -1));
+        Map<String, Map<String, Integer>> nullSource = new LinkedHashMap<>();
+        nullSource.put("c", Collections.singletonMap("d", 1));
+        nullSource.put(null, Collections.<String, Integer>emptyMap());
+        for (Map<String, Map<String, Integer>> invalid : Arrays.asList(edges, nullSource)) {
+            try {
+                graph.merge(invalid, Integer::sum);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+                assertEquals(1, graph.edgeCount());
+            }
+        }
+    }
+    
+    @Test
+    public void testMergeNegativeCombineLeavesGraphUnchanged() {
+        BulkGraph<String> graph = emptyInstance();
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 2);
+        Map<String, Map<String, Integer>> edges = new LinkedHashMap<>();
+        edges.put("a", Collections.singletonMap("b", 3));
+        edges.put("d", Collections.singletonMap("e", 1));
+        edges.put("b", Collections.singletonMap("c", 5));
+        try {
+            // negative only for b -> c, after a -> b and d -> e combine fine
+            graph.merge(edges, (current, merged) -> current == 2 ? -1 : current + merged);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), graph.vertices());
+            assertEquals(Collections.singletonMap("b", 1), graph.targets("a"));
+            assertEquals(Collections.singletonMap("c", 2), graph.targets("b"));
+            assertEquals(2, graph.edgeCount());
+        }
+    }
+    
+}
@@ -10,17 +10,18 @@ import org.junit.Test;
 /**
  * Tests for ConcreteVerticesGraph.
  * 
- * This class runs the GraphInstanceTest tests against ConcreteVerticesGraph, as
- * well as tests for that particular implementation.
+ * This class runs the GraphInstanceTest and BulkGraphTest tests against
+ * ConcreteVerticesGraph, as well as tests for that particular implementation.
  * 
- * Tests against the Graph spec should be in GraphInstanceTest.
+ * Tests against the Graph spec should be in GraphInstanceTest, and tests
+ * against the BulkGraph spec in BulkGraphTest.
  */
-public class ConcreteVerticesGraphTest extends GraphInstanceTest {
+public class ConcreteVerticesGraphTest extends BulkGraphTest {
     
     /*
-     * Provide a ConcreteVerticesGraph for tests in GraphInstanceTest.
+     * Provide a ConcreteVerticesGraph for tests in GraphInstanceTest and BulkGraphTest.
      */
-    @Override public Graph<String> emptyInstance() {
+    @Override public BulkGraph<String> emptyInstance() {
         return new ConcreteVerticesGraph();
     }
     
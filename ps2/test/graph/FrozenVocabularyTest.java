@@ -0,0 +1,89 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for FrozenVocabulary.
+ */
+public class FrozenVocabularyTest {
+    
+    // Testing strategy
+    //   size: 0, 1, many words
+    //   words: ASCII, multi-byte UTF-8, surrogate pairs, empty string
+    //   lookups: known word, unknown word, prefix/extension of a known word
+    //   duplicates in input
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    @Test
+    public void testEmpty() {
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(Collections.<String>emptyList());
+        assertEquals(0, vocabulary.size());
+        assertEquals(-1, vocabulary.id("a"));
+    }
+    
+    @Test
+    public void testSingleWord() {
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(Collections.singleton("hello,"));
+        assertEquals(0, vocabulary.id("hello,"));
+        assertEquals("hello,", vocabulary.label(0));
+        assertEquals(-1, vocabulary.id("hello"));
+        assertEquals(-1, vocabulary.id("hello,,"));
+    }
+    
+    @Test
+    public void testUnicode() {
+        List<String> words = Arrays.asList("caf\u00e9", "\u65e5\u672c", "\ud83d\ude00!", "", "plain");
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(words);
+        Set<Integer> ids = new HashSet<>();
+        for (String word : words) {
+            int id = vocabulary.id(word);
+            assertTrue(id >= 0 && id < words.size());
+            assertEquals(word, vocabulary.label(id));
+            ids.add(id);
+        }
+        assertEquals(words.size(), ids.size());
+        assertEquals(-1, vocabulary.id("cafe"));
+        assertEquals(-1, vocabulary.id("\u65e5"));
+    }
+    
+    @Test
+    public void testManyWordsMinimalAndPerfect() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            words.add("w" + Integer.toString(i, 36));
+        }
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(words);
+        boolean[] used = new boolean[words.size()];
+        for (String word : words) {
+            int id = vocabulary.id(word);
+            assertFalse("ids are distinct", used[id]);
+            used[id] = true;
+            assertEquals(word, vocabulary.label(id));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(-1, vocabulary.id("x" + i));
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testDuplicates() {
+        FrozenVocabulary.of(Arrays.asList("a", "b", "a"));
+    }
+    
+}
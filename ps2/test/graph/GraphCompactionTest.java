@@ -0,0 +1,113 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Tests for GraphCompaction.
+ */
+public class GraphCompactionTest {
+    
+    // Testing strategy
+    //   minWeight: removes nothing, removes some edges
+    //   topK: larger than every out-degree, smaller than some out-degree
+    //   orphans: vertex loses all edges, vertex keeps an in-edge only, vertex isolated before
+    //   run in bulk on a Graph, in bulk on each BulkGraph, in background
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // a -> b (5), a -> c (1), a -> d (3), b -> c (1), e isolated
+    private static Graph<String> sample() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("a", "b", 5);
+        graph.set("a", "c", 1);
+        graph.set("a", "d", 3);
+        graph.set("b", "c", 1);
+        graph.add("e");
+        return graph;
+    }
+    
+    @Test
+    public void testNothingRemoved() {
+        Graph<String> graph = sample();
+        graph.remove("e");
+        GraphCompaction.Report report = GraphCompaction.compact(graph, 1, Integer.MAX_VALUE);
+        assertEquals(0, report.edgesRemoved());
+        assertEquals(0, report.verticesRemoved());
+        assertEquals(4, report.edgesBefore());
+        assertEquals(0, report.fractionRemoved(), 0);
+    }
+    
+    @Test
+    public void testMinWeight() {
+        Graph<String> graph = sample();
+        GraphCompaction.Report report = GraphCompaction.compact(graph, 2, Integer.MAX_VALUE);
+        assertEquals(2, report.edgesRemoved());
+        assertEquals(2, report.verticesRemoved()); // c lost all edges, e had none
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "d")), graph.vertices());
+        assertEquals(5, (int) graph.targets("a").get("b"));
+        assertEquals(4.0 / 9, report.fractionRemoved(), 1e-9); // 2 of 4 edges, 2 of 5 vertices
+    }
+    
+    @Test
+    public void testTopK() {
+        Graph<String> graph = sample();
+        GraphCompaction.Report report = GraphCompaction.compact(graph, 1, 1);
+        assertEquals(2, report.edgesRemoved());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), graph.vertices());
+        assertEquals(1, graph.targets("a").size());
+        assertEquals(5, (int) graph.targets("a").get("b"));
+        assertEquals(1, (int) graph.targets("b").get("c"));
+    }
+    
+    @Test
+    public void testInBackground() throws Exception {
+        Graph<String> graph = sample();
+        Object lock = new Object();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            GraphCompaction.Report report =
+                    GraphCompaction.compactInBackground(graph, 2, 1, lock, executor).get();
+            assertEquals(3, report.edgesRemoved());
+            synchronized (lock) {
+                assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testBulkGraphs() {
+        for (BulkGraph<String> graph : Arrays.<BulkGraph<String>>asList(
+                new ConcreteEdgesGraph(), new ConcreteVerticesGraph())) {
+            graph.set("a", "b", 5);
+            graph.set("a", "c", 1);
+            graph.set("a", "d", 3);
+            graph.set("b", "c", 1);
+            graph.set("d", "e", 2);
+            graph.add("f");
+            GraphCompaction.Report report = GraphCompaction.compact(graph, 2, 1);
+            assertEquals(5, report.edgesBefore());
+            assertEquals(3, report.edgesRemoved());
+            assertEquals(2, report.verticesRemoved()); // c lost all edges, f had none
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "d", "e")), graph.vertices());
+            assertEquals(2, graph.edgeCount());
+            assertEquals(5, (int) graph.targets("a").get("b"));
+            assertEquals(2, (int) graph.targets("d").get("e"));
+        }
+    }
+    
+}
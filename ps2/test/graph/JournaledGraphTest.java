@@ -0,0 +1,225 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for JournaledGraph.
+ *
+ * This class runs the GraphInstanceTest tests against JournaledGraph, as
+ * well as tests for that particular implementation.
+ */
+public class JournaledGraphTest extends GraphInstanceTest {
+
+    // every graph and directory a test opens, released by cleanUp()
+    private final List<JournaledGraph> opened = new ArrayList<>();
+    private final List<Path> directories = new ArrayList<>();
+
+    /*
+     * Provide a JournaledGraph over a fresh directory for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        try {
+            JournaledGraph graph = JournaledGraph.open(directory(), new ConcreteEdgesGraph(), 10, 1000);
+            opened.add(graph);
+            return graph;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Close every graph the test opened, then delete its directories.
+     */
+    @After
+    public void cleanUp() throws IOException {
+        for (JournaledGraph graph : opened) {
+            graph.close(); // no-op if the test already closed it
+        }
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /*
+     * Testing JournaledGraph...
+     */
+
+    // Testing strategy for JournaledGraph
+    //   recovery after: close, sync without close (crash), checkpoint, torn journal tail
+    //   mutations: add, set (new, changed, zero weight), remove, no-op
+    //   checkpoint: one segment, several segments
+    //   mutation after close
+    //   write failure in sync(): later mutations, syncs and close fail, recovery
+    //     yields the last synced state
+
+    private Path directory() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        directories.add(directory);
+        return directory;
+    }
+
+    private JournaledGraph open(Path directory) throws IOException {
+        JournaledGraph graph = JournaledGraph.open(directory, new ConcreteVerticesGraph(), 10, 1_000_000);
+        opened.add(graph);
+        return graph;
+    }
+
+    private static Map<String, Map<String, Integer>> contents(Graph<String> graph) {
+        Map<String, Map<String, Integer>> contents = new HashMap<>();
+        for (String vertex : graph.vertices()) {
+            contents.put(vertex, new HashMap<>(graph.targets(vertex)));
+        }
+        return contents;
+    }
+
+    @Test
+    public void testRecoverAfterClose() throws IOException {
+        Path directory = directory();
+        JournaledGraph graph = open(directory);
+        graph.set("a", "b", 1);
+        graph.set("a", "b", 4);
+        graph.set("b", "c", 2);
+        graph.set("c", "d", 0);
+        graph.add("e");
+        graph.add("e");
+        graph.set("e", "a", 3);
+        graph.remove("b");
+        Map<String, Map<String, Integer>> expected = contents(graph);
+        graph.close();
+
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(expected, contents(recovered));
+            assertEquals(Collections.singletonMap("a", 3), recovered.targets("e"));
+            assertTrue(recovered.vertices().contains("d"));
+        }
+    }
+
+    @Test
+    public void testRecoverAfterCrash() throws IOException {
+        Path directory = directory();
+        JournaledGraph graph = open(directory);
+        graph.set("\u00e9t\u00e9", "hiver", 7);
+        graph.sync();
+        // abandoned without close, as if the process died
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(contents(graph), contents(recovered));
+        }
+    }
+
+    @Test
+    public void testRecoverFromCheckpointAndJournal() throws IOException {
+        Path directory = directory();
+        JournaledGraph graph = open(directory);
+        for (int i = 0; i < 5000; i++) {
+            graph.set("v" + i, "v" + (i + 1) % 5000, i % 9 + 1);
+        }
+        graph.checkpoint();
+        graph.remove("v17");
+        graph.set("v1", "v3", 2);
+        Map<String, Map<String, Integer>> expected = contents(graph);
+        graph.close();
+
+        assertTrue(Files.exists(directory.resolve("checkpoint.bin")));
+        assertFalse(Files.exists(directory.resolve("journal-0.log")));
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(expected, contents(recovered));
+        }
+    }
+
+    @Test
+    public void testTornTailDiscarded() throws IOException {
+        Path directory = directory();
+        JournaledGraph graph = open(directory);
+        graph.set("a", "b", 1);
+        graph.close();
+        Files.write(directory.resolve("journal-0.log"), new byte[] { 0, 0, 1, 0, 5, 5 },
+                StandardOpenOption.APPEND);
+
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(Collections.singletonMap("b", 1), recovered.targets("a"));
+            recovered.set("b", "c", 2);
+        }
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(Collections.singletonMap("c", 2), recovered.targets("b"));
+            assertEquals(Collections.singletonMap("b", 1), recovered.targets("a"));
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testMutateAfterClose() throws IOException {
+        JournaledGraph graph = open(directory());
+        graph.close();
+        graph.add("a");
+    }
+
+    @Test
+    public void testSyncFailureStopsJournal() throws Exception {
+        Path directory = directory();
+        JournaledGraph graph = open(directory);
+        graph.set("a", "b", 1);
+        graph.sync();
+        graph.set("a", "b", 0);
+        graph.set("c", "d", 2);
+        // closing the journal under the graph makes its next write throw ClosedChannelException
+        Field journal = JournaledGraph.class.getDeclaredField("journal");
+        journal.setAccessible(true);
+        ((FileChannel) journal.get(graph)).close();
+        try {
+            graph.sync();
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            graph.remove("c");
+            fail("expected UncheckedIOException");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+        try {
+            graph.sync();
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            graph.close();
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Map<String, Map<String, Integer>> expected = new HashMap<>();
+        expected.put("a", Collections.singletonMap("b", 1));
+        expected.put("b", Collections.<String, Integer>emptyMap());
+        try (JournaledGraph recovered = open(directory)) {
+            assertEquals(expected, contents(recovered));
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for ShardedGraph.
+ * 
+ * This class runs the GraphInstanceTest tests against ShardedGraph, as
+ * well as tests for that particular implementation.
+ */
+public class ShardedGraphTest extends GraphInstanceTest {
+    
+    /*
+     * Provide a ShardedGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new ShardedGraph<>(4, ConcreteVerticesGraph::new);
+    }
+    
+    /*
+     * Testing ShardedGraph...
+     */
+    
+    // Testing strategy for ShardedGraph
+    //   shard count: 1, > 1
+    //   edges within a shard, across shards; sources() merging several shards
+    //   set() with weight 0 on a missing edge; remove() of a vertex with
+    //   edges from other shards
+    //   placeholders: dropped after set() to 0 and remove() of the source,
+    //   kept while another in-edge from the same shard remains
+    //   concurrent set() from several threads
+    //   remove() of a missing vertex; vertices() and sources() below and above
+    //   the size that fans out in parallel
+    
+    private static final List<String> WORDS =
+            Arrays.asList("the", "a", "cat", "sat", "on", "mat", "dog", "ran");
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoShards() {
+        new ShardedGraph<String>(0, ConcreteVerticesGraph::new);
+    }
+    
+    @Test
+    public void testSingleShard() {
+        Graph<String> graph = new ShardedGraph<>(1, ConcreteEdgesGraph::new);
+        graph.set("a", "b", 2);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(Collections.singletonMap("a", 2), graph.sources("b"));
+    }
+    
+    @Test
+    public void testSourcesAcrossShards() {
+        Graph<String> graph = emptyInstance();
+        for (String word : WORDS) {
+            graph.set(word, "hub", word.length());
+        }
+        assertEquals(WORDS.size(), graph.sources("hub").size());
+        assertEquals(3, (int) graph.sources("hub").get("the"));
+        assertEquals(new HashSet<>(WORDS), new HashSet<>(graph.sources("hub").keySet()));
+        assertEquals(WORDS.size() + 1, graph.vertices().size());
+    }
+    
+    @Test
+    public void testSetZeroDoesNotAddVertices() {
+        Graph<String> graph = emptyInstance();
+        assertEquals(0, graph.set("x", "y", 0));
+        assertEquals(Collections.emptySet(), graph.vertices());
+    }
+    
+    @Test
+    public void testRemoveVertexWithIncomingEdges() {
+        Graph<String> graph = emptyInstance();
+        for (String word : WORDS) {
+            graph.set(word, "hub", 1);
+            graph.set("hub", word, 1);
+        }
+        assertTrue(graph.remove("hub"));
+        assertEquals(new HashSet<>(WORDS), graph.vertices());
+        for (String word : WORDS) {
+            assertEquals(Collections.emptyMap(), graph.targets(word));
+        }
+        assertFalse(graph.remove("hub"));
+    }
+    
+    // total number of vertices, placeholders included, held by the shards
+    private static int storedVertices(List<Graph<String>> shards) {
+        int stored = 0;
+        for (Graph<String> shard : shards) {
+            stored += shard.vertices().size();
+        }
+        return stored;
+    }
+    
+    @Test
+    public void testPlaceholdersDropped() {
+        List<Graph<String>> shards = new ArrayList<>();
+        Graph<String> graph = new ShardedGraph<>(4, () -> {
+            Graph<String> shard = new ConcreteVerticesGraph();
+            shards.add(shard);
+            return shard;
+        });
+        for (int round = 0; round < 3; round++) {
+            for (String word : WORDS) {
+                graph.set(word, "w" + round, 1);
+                graph.set(word, "v" + round, 1);
+            }
+            for (String word : WORDS) {
+                graph.set(word, "w" + round, 0);
+            }
+        }
+        for (String word : WORDS.subList(1, WORDS.size())) {
+            graph.set(word, "v0", 0);
+        }
+        assertEquals(Collections.singletonMap("the", 1), graph.sources("v0")); // its placeholder is still needed
+        for (String word : WORDS) {
+            assertTrue(graph.remove(word));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("w0", "w1", "w2", "v0", "v1", "v2")), graph.vertices());
+        assertEquals(6, storedVertices(shards));
+    }
+    
+    @Test
+    public void testConcurrentSet() throws InterruptedException {
+        Graph<String> graph = new ShardedGraph<>(8, ConcreteVerticesGraph::new);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    graph.set("w" + (i * 4 + offset), "w" + i, 1);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800, graph.vertices().size());
+        int edges = 0;
+        for (String vertex : graph.vertices()) {
+            edges += graph.targets(vertex).size();
+        }
+        assertEquals(800, edges);
+    }
+    
+    @Test
+    public void testLargeGraphManyShards() {
+        List<Graph<String>> shards = new ArrayList<>();
+        Graph<String> graph = new ShardedGraph<>(16, () -> {
+            Graph<String> shard = new ConcreteEdgesGraph();
+            shards.add(shard);
+            return shard;
+        });
+        for (int i = 0; i < 20000; i++) {
+            graph.set("v" + i, "hub", 1);
+        }
+        assertEquals(20001, graph.vertices().size());
+        assertEquals(20000, graph.sources("hub").size());
+        int stored = 0;
+        for (Graph<String> shard : shards) {
+            stored += shard.vertices().size();
+        }
+        assertFalse(graph.remove("missing"));
+        int after = 0;
+        for (Graph<String> shard : shards) {
+            after += shard.vertices().size();
+        }
+        assertEquals(stored, after);
+        assertTrue(graph.remove("hub"));
+        assertEquals(20000, graph.vertices().size());
+        assertEquals(Collections.emptyMap(), graph.targets("v0"));
+    }
+    
+}
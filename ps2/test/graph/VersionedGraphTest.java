@@ -0,0 +1,135 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for VersionedGraph.
+ * 
+ * This class runs the GraphInstanceTest tests against VersionedGraph, as
+ * well as tests for that particular implementation.
+ */
+public class VersionedGraphTest extends GraphInstanceTest {
+    
+    /*
+     * Provide a VersionedGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new VersionedGraph<>();
+    }
+    
+    /*
+     * Testing VersionedGraph...
+     */
+    
+    // Testing strategy for VersionedGraph
+    //   snapshot taken before, between, after mutations
+    //   update(): empty batch, batch of several mutations, set() to the current weight
+    //   targets()/sources() of a snapshot: missing vertex, vertex with edges
+    //   mutators of a snapshot
+    
+    @Test
+    public void testSnapshotUnchangedByLaterWrites() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 1);
+        VersionedGraph.Snapshot<String> before = graph.snapshot();
+        graph.set("a", "b", 2);
+        graph.set("b", "c", 3);
+        graph.remove("a");
+        assertEquals(Collections.singletonMap("b", 1), before.targets("a"));
+        assertEquals(2, before.vertices().size());
+        assertFalse(graph.vertices().contains("a"));
+        assertEquals(Collections.singletonMap("b", 3), graph.sources("c"));
+        assertTrue(graph.snapshot().version() > before.version());
+    }
+    
+    @Test
+    public void testUpdateIsAtomic() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        long start = graph.snapshot().version();
+        VersionedGraph.Snapshot<String> published = graph.update(g -> {
+            g.set("a", "b", 1);
+            g.set("b", "c", 1);
+            g.set("a", "b", 0);
+        });
+        assertEquals(start + 1, published.version());
+        assertSame(published, graph.snapshot());
+        assertEquals(Collections.emptyMap(), published.targets("a"));
+        assertEquals(Collections.singletonMap("b", 1), published.sources("c"));
+    }
+    
+    @Test
+    public void testEmptyUpdatePublishesNothing() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.add("a");
+        VersionedGraph.Snapshot<String> before = graph.snapshot();
+        assertSame(before, graph.update(g -> g.add("a")));
+    }
+    
+    @Test
+    public void testSameWeightPublishesNothing() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 1000); // outside the Integer cache, so only an int comparison matches
+        VersionedGraph.Snapshot<String> before = graph.snapshot();
+        assertEquals(1000, graph.set("a", "b", 1000));
+        assertSame(before, graph.snapshot());
+        assertSame(before, graph.update(g -> g.set("a", "b", 1000)));
+    }
+    
+    @Test
+    public void testSnapshotReadsMissingVertex() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        assertEquals(Collections.emptyMap(), graph.snapshot().targets("x"));
+        assertEquals(Collections.emptyMap(), graph.snapshot().sources("x"));
+    }
+    
+    @Test(expected=UnsupportedOperationException.class)
+    public void testSnapshotImmutable() {
+        new VersionedGraph<String>().snapshot().add("a");
+    }
+    
+    /*
+     * Testing PersistentMap...
+     */
+    
+    // Testing strategy for PersistentMap
+    //   random plus/minus sequence compared against HashMap, including keys
+    //   whose hash codes collide ("Aa" and "BB"); old versions unchanged
+    
+    @Test
+    public void testPersistentMapMatchesHashMap() {
+        Random random = new Random(42);
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = random.nextInt(4) == 0
+                    ? (random.nextBoolean() ? "Aa" : "BB") + random.nextInt(3)
+                    : "k" + random.nextInt(2000);
+            PersistentMap<String, Integer> old = map;
+            Map<String, Integer> oldExpected = new HashMap<>(expected);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+            if (i % 1000 == 0) {
+                assertEquals(oldExpected, old);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(expected, map);
+    }
+    
+}
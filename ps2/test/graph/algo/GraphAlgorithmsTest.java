@@ -0,0 +1,715 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package graph.algo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import graph.ConcreteEdgesGraph;
+import graph.ConcreteVerticesGraph;
+import graph.FrozenVocabulary;
+import graph.Graph;
+import graph.JournaledGraph;
+import graph.WeightedEdge;
+
+/**
+ * Tests for the algorithms in graph.algo.
+ */
+public class GraphAlgorithmsTest {
+    
+    // Testing strategy
+    //   IndexedGraph: empty graph, edges sorted by id, in-edges mirror out-edges;
+    //     numbered by a FrozenVocabulary: same edges, labels not retained, mismatch
+    //   ShortestPaths: cost = WEIGHT, INVERSE_WEIGHT; reachable, unreachable, missing vertex
+    //   Reachability: sequential and parallel agree; source with no out-edges
+    //   StronglyConnectedComponents: cycle, chain, self-loop
+    //   PageRank: ranks sum to 1, sink of a star ranks highest, parallel agrees with sequential
+    //   IndexedGraph heaviest-first order: ties broken by id
+    //   BridgeWords: no path, degrees similar (merge), one side a hub (bounded search
+    //     from either side), ties; agrees with brute force on a random graph; bonus
+    //     bounded by the edge weights, overturning them on a hub and on a random graph
+    //   TwoHopFilter: no false negatives, rejects most absent pairs, memory budget binds,
+    //     pair joined by many paths inserted once, hub over the cap marked on either side
+    //   CompressedGraph: empty graph; same edges as the source graph with weights
+    //     small and large, neighbor ids below and above the vertex, degrees of one
+    //     and several varint bytes; bytes per edge
+    //     for small weights; mutators; BridgeWords agrees with the uncompressed index
+    //   GraphMerge.mergeInto: combine = SUM, MAX (saturating); target ConcreteVerticesGraph,
+    //     ConcreteEdgesGraph, other Graph; new vertices, isolated vertices, no-op merge
+    //   GraphMerge.merge: compressed graphs with the same labels, different labels numbered
+    //     in the same order and in the opposite order
+    //   GraphMerge.diff: identical graphs; vertices and edges added, removed, reweighted;
+    //     concrete graphs, compressed graphs with the same labels and with different labels;
+    //     agrees with a brute-force diff on a random graph
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // a -1-> b -1-> d, a -5-> c -5-> d, d -1-> a, e isolated
+    private static Graph<String> diamond() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("a", "b", 1);
+        graph.set("b", "d", 1);
+        graph.set("a", "c", 5);
+        graph.set("c", "d", 5);
+        graph.set("d", "a", 1);
+        graph.add("e");
+        return graph;
+    }
+    
+    @Test
+    public void testIndexedGraphEmpty() {
+        IndexedGraph<String> indexed = IndexedGraph.of(new ConcreteVerticesGraph());
+        assertEquals(0, indexed.size());
+        assertEquals(0, indexed.edgeCount());
+        assertEquals(-1, indexed.id("a"));
+    }
+    
+    @Test
+    public void testIndexedGraphAdjacency() {
+        IndexedGraph<String> indexed = IndexedGraph.of(diamond(), Arrays.asList("e", "d", "c", "b", "a"));
+        assertEquals(5, indexed.size());
+        assertEquals(5, indexed.edgeCount());
+        int a = indexed.id("a");
+        assertEquals(4, a);
+        assertEquals(2, indexed.outDegree(a));
+        assertEquals(indexed.id("c"), indexed.target(a, 0)); // sorted by id: c=2 before b=3
+        assertEquals(5, indexed.targetWeight(a, 0));
+        int d = indexed.id("d");
+        assertEquals(2, indexed.inDegree(d));
+        assertEquals(indexed.id("c"), indexed.source(d, 0));
+        assertEquals(5, indexed.sourceWeight(d, 0));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testIndexedGraphBadOrder() {
+        IndexedGraph.of(diamond(), Arrays.asList("a", "b"));
+    }
+    
+    @Test
+    public void testIndexedGraphByVocabulary() {
+        Graph<String> graph = diamond();
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(graph.vertices());
+        IndexedGraph<String> indexed = IndexedGraph.of(graph, vocabulary.labels(), vocabulary::id);
+        assertEquals(5, indexed.size());
+        assertEquals(5, indexed.edgeCount());
+        for (String vertex : graph.vertices()) {
+            int id = indexed.id(vertex);
+            assertEquals(vocabulary.id(vertex), id);
+            assertEquals(vertex, indexed.label(id));
+            assertNotSame("decoded on demand, not kept", indexed.label(id), indexed.label(id));
+            assertEquals(graph.targets(vertex).size(), indexed.outDegree(id));
+        }
+        assertEquals(5, indexed.weight(indexed.id("a"), indexed.id("c")));
+        assertEquals(-1, indexed.id("x"));
+        assertEquals(-1, indexed.id(null));
+        
+        CompressedGraph<String> compressed = CompressedGraph.of(indexed);
+        assertEquals(graph.vertices(), compressed.vertices());
+        assertFalse(compressed.vertices().contains("x"));
+        assertEquals(graph.targets("a"), compressed.targets("a"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testIndexedGraphByOtherVocabulary() {
+        Graph<String> graph = diamond();
+        FrozenVocabulary vocabulary = FrozenVocabulary.of(Arrays.asList("a", "b", "c", "d", "f"));
+        IndexedGraph.of(graph, vocabulary.labels(), vocabulary::id);
+    }
+    
+    @Test
+    public void testShortestPathByWeight() {
+        assertEquals(Arrays.asList("a", "b", "d"),
+                ShortestPaths.shortestPath(diamond(), "a", "d", ShortestPaths.Cost.WEIGHT));
+    }
+    
+    @Test
+    public void testShortestPathByInverseWeight() {
+        assertEquals(Arrays.asList("a", "c", "d"),
+                ShortestPaths.shortestPath(diamond(), "a", "d", ShortestPaths.Cost.INVERSE_WEIGHT));
+    }
+    
+    @Test
+    public void testShortestPathUnreachable() {
+        assertEquals(Collections.emptyList(),
+                ShortestPaths.shortestPath(diamond(), "a", "e", ShortestPaths.Cost.WEIGHT));
+        assertEquals(Collections.emptyList(),
+                ShortestPaths.shortestPath(diamond(), "a", "z", ShortestPaths.Cost.WEIGHT));
+    }
+    
+    @Test
+    public void testDistances() {
+        IndexedGraph<String> indexed = IndexedGraph.of(diamond());
+        double[] dist = ShortestPaths.distances(indexed, indexed.id("a"), ShortestPaths.Cost.WEIGHT);
+        assertEquals(0.0, dist[indexed.id("a")], 0);
+        assertEquals(2.0, dist[indexed.id("d")], 0);
+        assertEquals(5.0, dist[indexed.id("c")], 0);
+        assertEquals(Double.POSITIVE_INFINITY, dist[indexed.id("e")], 0);
+    }
+    
+    @Test
+    public void testReachable() {
+        Set<String> expected = new HashSet<>(Arrays.asList("a", "b", "c", "d"));
+        assertEquals(expected, Reachability.reachable(diamond(), "b"));
+        assertEquals(Collections.singleton("e"), Reachability.reachable(diamond(), "e"));
+    }
+    
+    @Test
+    public void testParallelReachableMatchesSequential() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 3000; i++) {
+            graph.set("v" + i, "v" + (i * 7 % 2999), 1);
+            graph.set("v" + i, "v" + (i + 1), 1);
+        }
+        graph.add("lonely");
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        BitSet sequential = Reachability.reachable(indexed, indexed.id("v0"));
+        BitSet parallel = Reachability.parallelReachable(indexed, indexed.id("v0"), ForkJoinPool.commonPool());
+        assertEquals(sequential, parallel);
+        assertFalse(parallel.get(indexed.id("lonely")));
+    }
+    
+    @Test
+    public void testStronglyConnectedComponents() {
+        Graph<String> graph = diamond();
+        graph.set("e", "e", 1);
+        graph.set("d", "f", 1);
+        List<Set<String>> components = StronglyConnectedComponents.components(graph);
+        assertEquals(3, components.size());
+        assertTrue(components.contains(new HashSet<>(Arrays.asList("a", "b", "c", "d"))));
+        assertTrue(components.contains(Collections.singleton("e")));
+        assertTrue(components.contains(Collections.singleton("f")));
+    }
+    
+    @Test
+    public void testPageRank() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (String leaf : Arrays.asList("x", "y", "z")) {
+            graph.set(leaf, "hub", 1);
+        }
+        Map<String, Double> ranks = PageRank.rank(graph);
+        double sum = 0;
+        for (double rank : ranks.values()) {
+            sum += rank;
+        }
+        assertEquals(1.0, sum, 1e-6);
+        assertTrue(ranks.get("hub") > ranks.get("x"));
+        assertEquals(ranks.get("x"), ranks.get("y"), 1e-12);
+    }
+    
+    @Test
+    public void testParallelPageRankMatchesSequential() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 10000; i++) {
+            graph.set("v" + i, "v" + (i * 31 % 9973), 1 + i % 3);
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        double[] sequential = PageRank.rank(indexed, 0.85, 20, 0, null);
+        double[] parallel = PageRank.rank(indexed, 0.85, 20, 0, ForkJoinPool.commonPool());
+        for (int v = 0; v < sequential.length; v++) {
+            assertEquals(sequential[v], parallel[v], 1e-12);
+        }
+    }
+    
+    @Test
+    public void testHeaviestFirst() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("u", "a", 2);
+        graph.set("u", "b", 7);
+        graph.set("u", "c", 2);
+        IndexedGraph<String> indexed = IndexedGraph.of(graph, Arrays.asList("u", "c", "b", "a"));
+        int u = indexed.id("u");
+        assertEquals(indexed.id("b"), indexed.heaviestTarget(u, 0));
+        assertEquals(7, indexed.heaviestTargetWeight(u, 0));
+        assertEquals(indexed.id("c"), indexed.heaviestTarget(u, 1));
+        assertEquals(indexed.id("a"), indexed.heaviestTarget(u, 2));
+        assertEquals(7, indexed.weight(u, indexed.id("b")));
+        assertEquals(0, indexed.weight(indexed.id("b"), u));
+    }
+    
+    @Test
+    public void testBridgeWordsNoPath() {
+        IndexedGraph<String> indexed = IndexedGraph.of(diamond());
+        assertEquals(-1, BridgeWords.best(indexed, indexed.id("a"), indexed.id("e")));
+        assertEquals(-1, BridgeWords.best(indexed, indexed.id("e"), indexed.id("a")));
+    }
+    
+    @Test
+    public void testBridgeWordsMerge() {
+        IndexedGraph<String> indexed = IndexedGraph.of(diamond());
+        assertEquals(indexed.id("c"), BridgeWords.best(indexed, indexed.id("a"), indexed.id("d")));
+    }
+    
+    @Test
+    public void testBridgeWordsHub() {
+        // "the" has many out-edges, "cat" only two in-edges; and the reverse
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 100; i++) {
+            graph.set("the", "w" + i, 1 + i % 5);
+            graph.set("w" + i, "end", 1 + i % 3);
+        }
+        graph.set("the", "big", 3);
+        graph.set("big", "cat", 1);
+        graph.set("the", "fat", 2);
+        graph.set("fat", "cat", 4);
+        graph.set("start", "w7", 9);
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        assertEquals(indexed.id("fat"), BridgeWords.best(indexed, indexed.id("the"), indexed.id("cat")));
+        assertEquals(indexed.id("w7"), BridgeWords.best(indexed, indexed.id("start"), indexed.id("end")));
+    }
+    
+    @Test
+    public void testBridgeWordsMatchesBruteForce() {
+        Random random = new Random(7);
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 1500; i++) {
+            // skewed degrees: low-numbered words are hubs
+            int source = (int) Math.sqrt(random.nextInt(2500));
+            graph.set("v" + source, "v" + random.nextInt(50), 1 + random.nextInt(4));
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        for (int u = 0; u < indexed.size(); u++) {
+            for (int w = 0; w < indexed.size(); w++) {
+                int expected = -1;
+                int expectedWeight = 0;
+                for (int b = 0; b < indexed.size(); b++) {
+                    int first = indexed.weight(u, b);
+                    int second = indexed.weight(b, w);
+                    if (first > 0 && second > 0 && first + second > expectedWeight) {
+                        expected = b;
+                        expectedWeight = first + second;
+                    }
+                }
+                assertEquals(expected, BridgeWords.best(indexed, u, w));
+            }
+        }
+    }
+    
+    @Test
+    public void testCompressedGraphEmpty() {
+        CompressedGraph<String> compressed = CompressedGraph.of(new ConcreteVerticesGraph());
+        assertEquals(0, compressed.size());
+        assertEquals(Collections.emptySet(), compressed.vertices());
+        assertEquals(Collections.emptyMap(), compressed.targets("a"));
+    }
+    
+    @Test
+    public void testCompressedGraphSameEdges() {
+        Random random = new Random(11);
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 2000; i++) {
+            int weight = random.nextInt(4) == 0 ? 1 + random.nextInt(100000) : 1 + random.nextInt(3);
+            graph.set("v" + random.nextInt(300), "v" + random.nextInt(300), weight);
+        }
+        graph.set("v0", "v299", Integer.MAX_VALUE);
+        for (int i = 0; i < 200; i++) {
+            graph.set("hub", "v" + i, 1);
+        }
+        graph.add("isolated");
+        CompressedGraph<String> compressed = CompressedGraph.of(graph);
+        IndexedGraph<String> indexed = IndexedGraph.of(graph, compressed.labels());
+        assertEquals(graph.vertices(), compressed.vertices());
+        assertEquals(indexed.edgeCount(), compressed.edgeCount());
+        int[] ids = new int[compressed.size()];
+        int[] weights = new int[compressed.size()];
+        for (String vertex : graph.vertices()) {
+            assertEquals(graph.targets(vertex), compressed.targets(vertex));
+            assertEquals(graph.sources(vertex), compressed.sources(vertex));
+            int id = compressed.id(vertex);
+            assertEquals(indexed.outDegree(id), compressed.outDegree(id));
+            assertEquals(indexed.inDegree(id), compressed.inDegree(id));
+            assertEquals(indexed.outDegree(id), compressed.targets(id, ids, weights));
+            for (int i = 0; i < indexed.outDegree(id); i++) {
+                assertEquals(indexed.target(id, i), ids[i]);
+                assertEquals(indexed.targetWeight(id, i), weights[i]);
+                assertEquals(weights[i], compressed.weight(id, ids[i]));
+            }
+            assertEquals(indexed.inDegree(id), compressed.sources(id, ids, weights));
+        }
+        assertEquals(Integer.MAX_VALUE, compressed.weight(compressed.id("v0"), compressed.id("v299")));
+        assertEquals(0, compressed.weight(compressed.id("isolated"), compressed.id("v0")));
+    }
+    
+    @Test
+    public void testCompressedGraphBytesPerEdge() {
+        // word-like graph: mostly weight 1, every vertex linked to nearby ids
+        Graph<String> graph = new ConcreteVerticesGraph();
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            order.add("w" + i);
+            for (int k = 1; k <= 5; k++) {
+                graph.set("w" + i, "w" + (i + 7 * k) % 1000, k == 1 ? 2 : 1);
+            }
+        }
+        CompressedGraph<String> compressed = CompressedGraph.of(graph, order);
+        double bytesPerEdge = (double) compressed.byteSize() / compressed.edgeCount();
+        assertTrue("bytes per edge: " + bytesPerEdge, bytesPerEdge <= 4);
+    }
+    
+    @Test(expected=UnsupportedOperationException.class)
+    public void testCompressedGraphImmutable() {
+        CompressedGraph.of(diamond()).set("a", "b", 2);
+    }
+    
+    @Test
+    public void testBridgeWordsCompressedMatchesIndexed() {
+        Random random = new Random(5);
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 1500; i++) {
+            int source = (int) Math.sqrt(random.nextInt(2500));
+            graph.set("v" + source, "v" + random.nextInt(50), 1 + random.nextInt(4));
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        CompressedGraph<String> compressed = CompressedGraph.of(indexed);
+        for (int u = 0; u < indexed.size(); u++) {
+            for (int w = 0; w < indexed.size(); w++) {
+                assertEquals(BridgeWords.best(indexed, u, w), BridgeWords.best(compressed, u, w));
+            }
+        }
+    }
+    
+    @Test
+    public void testBridgeWordsHubBonus() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("u", "heavy", 5);
+        graph.set("u", "light", 4);
+        for (int i = 0; i < 20; i++) {
+            graph.set("w" + i, "hub", 1);
+        }
+        graph.set("heavy", "hub", 1);
+        graph.set("light", "hub", 1);
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        int u = indexed.id("u");
+        int hub = indexed.id("hub");
+        int light = indexed.id("light");
+        // light: 4 + 1 + 2 * 5 beats heavy: 5 + 1, though its edges alone could not
+        IntToLongFunction bonus = b -> b == light ? 10 : 0;
+        assertEquals(indexed.id("heavy"), BridgeWords.best(indexed, u, hub));
+        assertEquals(light, BridgeWords.best(indexed, u, hub, bonus, 2));
+    }
+    
+    @Test
+    public void testBridgeWordsBonusMatchesBruteForce() {
+        Random random = new Random(13);
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 1500; i++) {
+            int source = (int) Math.sqrt(random.nextInt(2500));
+            graph.set("v" + source, "v" + random.nextInt(50), 1 + random.nextInt(100));
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        CompressedGraph<String> compressed = CompressedGraph.of(indexed);
+        for (int u = 0; u < indexed.size(); u++) {
+            for (int w = 0; w < indexed.size(); w++) {
+                int from = u;
+                int to = w;
+                // at most twice the edge weights, and large enough to overturn them
+                IntToLongFunction bonus = b -> (b % 3) * (indexed.weight(from, b) + indexed.weight(b, to));
+                int expected = -1;
+                long expectedScore = 0;
+                for (int b = 0; b < indexed.size(); b++) {
+                    int first = indexed.weight(u, b);
+                    int second = indexed.weight(b, w);
+                    long score = first + second + bonus.applyAsLong(b);
+                    if (first > 0 && second > 0 && score > expectedScore) {
+                        expected = b;
+                        expectedScore = score;
+                    }
+                }
+                assertEquals(expected, BridgeWords.best(indexed, u, w, bonus, 2));
+                assertEquals(expected, BridgeWords.best(compressed, u, w, bonus));
+            }
+        }
+    }
+    
+    @Test
+    public void testTwoHopFilter() {
+        Random random = new Random(3);
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 400; i++) {
+            graph.set("v" + random.nextInt(200), "v" + random.nextInt(200), 1);
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        TwoHopFilter filter = TwoHopFilter.build(indexed, 0.01, 1 << 20);
+        int absent = 0;
+        int falsePositives = 0;
+        for (int u = 0; u < indexed.size(); u++) {
+            for (int w = 0; w < indexed.size(); w++) {
+                if (BridgeWords.best(indexed, u, w) >= 0) {
+                    assertTrue("no false negatives", filter.mightHaveBridge(u, w));
+                } else {
+                    absent++;
+                    if (filter.mightHaveBridge(u, w)) {
+                        falsePositives++;
+                    }
+                }
+            }
+        }
+        assertTrue("false positive rate near target", falsePositives < absent * 0.05);
+    }
+    
+    @Test
+    public void testTwoHopFilterBudget() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 100; i++) {
+            graph.set("a" + i, "hub", 1);
+            graph.set("hub", "b" + i, 1);
+        }
+        TwoHopFilter filter = TwoHopFilter.build(IndexedGraph.of(graph), 1e-6, 256);
+        assertEquals(256, filter.byteSize());
+        assertEquals(10000, filter.insertions());
+        assertTrue(filter.expectedFalsePositiveRate() > 1e-6);
+    }
+    
+    @Test
+    public void testTwoHopFilterDistinctPairs() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < 50; i++) {
+            graph.set("u", "b" + i, 1);
+            graph.set("b" + i, "w", 1);
+        }
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        TwoHopFilter filter = TwoHopFilter.build(indexed, 0.01, 1 << 20);
+        assertEquals(1, filter.insertions());
+        assertTrue(filter.mightHaveBridge(indexed.id("u"), indexed.id("w")));
+        assertTrue(filter.expectedFalsePositiveRate() < 1e-6);
+    }
+    
+    @Test
+    public void testTwoHopFilterHubCap() {
+        // hub with 20 sources and 30 targets, then with 30 sources and 20 targets
+        for (int sources : Arrays.asList(20, 30)) {
+            Graph<String> graph = new ConcreteVerticesGraph();
+            for (int i = 0; i < sources; i++) {
+                graph.set("a" + i, "hub", 1);
+            }
+            for (int i = 0; i < 50 - sources; i++) {
+                graph.set("hub", "b" + i, 1);
+            }
+            graph.set("x", "y", 1);
+            graph.set("y", "z", 1);
+            IndexedGraph<String> indexed = IndexedGraph.of(graph);
+            TwoHopFilter filter = TwoHopFilter.build(indexed, 0.01, 1 << 20, 100);
+            assertEquals(1, filter.insertions()); // x -> z; the hub's 600 pairs are marked instead
+            for (int u = 0; u < indexed.size(); u++) {
+                for (int w = 0; w < indexed.size(); w++) {
+                    if (BridgeWords.best(indexed, u, w) >= 0) {
+                        assertTrue("no false negatives", filter.mightHaveBridge(u, w));
+                    }
+                }
+            }
+            assertFalse(filter.mightHaveBridge(indexed.id("x"), indexed.id("y")));
+            assertTrue("marked vertices counted", filter.expectedFalsePositiveRate() > 0.2);
+        }
+    }
+    
+    private static Map<String, Map<String, Integer>> contents(Graph<String> graph) {
+        Map<String, Map<String, Integer>> contents = new HashMap<>();
+        for (String vertex : graph.vertices()) {
+            contents.put(vertex, new HashMap<>(graph.targets(vertex)));
+        }
+        return contents;
+    }
+    
+    private static Graph<String> copy(Graph<String> from, Graph<String> to) {
+        for (String vertex : from.vertices()) {
+            to.add(vertex);
+            for (Map.Entry<String, Integer> edge : from.targets(vertex).entrySet()) {
+                to.set(vertex, edge.getKey(), edge.getValue());
+            }
+        }
+        return to;
+    }
+    
+    // a -2-> b, b -3-> c, c -1-> a, f isolated
+    private static Graph<String> triangle() {
+        Graph<String> graph = new ConcreteEdgesGraph();
+        graph.set("a", "b", 2);
+        graph.set("b", "c", 3);
+        graph.set("c", "a", 1);
+        graph.add("f");
+        return graph;
+    }
+    
+    @Test
+    public void testMergeIntoSum() throws IOException {
+        Map<String, Map<String, Integer>> expected = contents(diamond());
+        expected.get("a").put("b", 3);
+        expected.get("b").put("c", 3);
+        expected.get("c").put("a", 1);
+        expected.put("f", new HashMap<>());
+        Path directory = Files.createTempDirectory("merge");
+        JournaledGraph journaled = JournaledGraph.open(directory, new ConcreteEdgesGraph(), 10, 1000);
+        try {
+            List<Graph<String>> targets = Arrays.asList(diamond(), copy(diamond(), new ConcreteEdgesGraph()),
+                    copy(diamond(), journaled));
+            for (Graph<String> target : targets) {
+                assertEquals(3, GraphMerge.mergeInto(target, triangle(), GraphMerge.Combine.SUM));
+                assertEquals(target.getClass().getSimpleName(), expected, contents(target));
+            }
+        } finally {
+            journaled.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testMergeIntoMax() {
+        for (Graph<String> target : Arrays.asList(diamond(), copy(diamond(), new ConcreteEdgesGraph()))) {
+            target.set("x", "y", Integer.MAX_VALUE);
+            Graph<String> source = triangle();
+            source.set("x", "y", 5);
+            assertEquals(3, GraphMerge.mergeInto(target, source, GraphMerge.Combine.MAX));
+            assertEquals(Integer.valueOf(2), target.targets("a").get("b"));
+            assertEquals(Integer.valueOf(5), target.targets("a").get("c"));
+            assertEquals(Integer.valueOf(Integer.MAX_VALUE), target.targets("x").get("y"));
+            assertTrue(target.vertices().contains("f"));
+            assertEquals(0, GraphMerge.mergeInto(target, source, GraphMerge.Combine.MAX));
+            
+            assertEquals(3, GraphMerge.mergeInto(target, source, GraphMerge.Combine.SUM));
+            assertEquals(Integer.valueOf(Integer.MAX_VALUE), target.targets("x").get("y")); // saturated
+        }
+    }
+    
+    private static final List<String> SIX = Arrays.asList("a", "b", "c", "d", "e", "f");
+    
+    @Test
+    public void testMergeCompressed() {
+        Graph<String> before = diamond();
+        before.add("f");
+        Graph<String> other = triangle();
+        other.add("d");
+        other.add("e");
+        CompressedGraph<String> merged = GraphMerge.merge(CompressedGraph.of(before, SIX),
+                CompressedGraph.of(other, SIX), GraphMerge.Combine.SUM);
+        GraphMerge.mergeInto(before, other, GraphMerge.Combine.SUM);
+        assertEquals(SIX, merged.labels());
+        assertEquals(7, merged.edgeCount());
+        assertEquals(contents(before), contents(merged));
+        assertEquals(Integer.valueOf(1), merged.sources("a").get("c"));
+    }
+    
+    @Test
+    public void testMergeCompressedDifferentLabels() {
+        // b's numbering runs against a's, so its rows are re-sorted after renumbering
+        List<List<String>> orders = Arrays.asList(Arrays.asList("a", "b", "c", "f"), Arrays.asList("f", "c", "b", "a"));
+        for (List<String> order : orders) {
+            CompressedGraph<String> merged = GraphMerge.merge(CompressedGraph.of(diamond(), SIX.subList(0, 5)),
+                    CompressedGraph.of(triangle(), order), GraphMerge.Combine.MAX);
+            Graph<String> expected = diamond();
+            GraphMerge.mergeInto(expected, triangle(), GraphMerge.Combine.MAX);
+            assertEquals(SIX, merged.labels());
+            assertEquals(contents(expected), contents(merged));
+            assertEquals(Integer.valueOf(2), merged.sources("b").get("a"));
+            assertEquals(5, merged.id("f"));
+            assertEquals(-1, merged.id("g"));
+        }
+    }
+    
+    @Test
+    public void testDiff() {
+        Graph<String> before = diamond();
+        assertTrue(GraphMerge.diff(before, copy(before, new ConcreteEdgesGraph())).isEmpty());
+        
+        Graph<String> after = copy(before, new ConcreteEdgesGraph());
+        after.remove("c");
+        after.remove("e");
+        after.set("a", "b", 4);
+        after.set("b", "d", 0);
+        after.set("d", "g", 2);
+        GraphMerge.Diff<String> diff = GraphMerge.diff(before, after);
+        assertEquals(Collections.singletonList("g"), diff.addedVertices());
+        assertEquals(new HashSet<>(Arrays.asList("c", "e")), new HashSet<>(diff.removedVertices()));
+        assertEquals(Collections.singletonList(new WeightedEdge<>("d", "g", 2)), diff.addedEdges());
+        assertEquals(new HashSet<>(Arrays.asList(new WeightedEdge<>("a", "c", 5), new WeightedEdge<>("c", "d", 5),
+                new WeightedEdge<>("b", "d", 1))), new HashSet<>(diff.removedEdges()));
+        assertEquals(1, diff.changedEdges().size());
+        GraphMerge.Change<String> change = diff.changedEdges().get(0);
+        assertEquals(Arrays.asList("a", "b", 1, 4),
+                Arrays.<Object>asList(change.source(), change.target(), change.before(), change.after()));
+        
+        List<String> reversed = new ArrayList<>(after.vertices());
+        Collections.sort(reversed, Collections.reverseOrder());
+        GraphMerge.Diff<String> compressed = GraphMerge.diff(CompressedGraph.of(before, SIX.subList(0, 5)),
+                CompressedGraph.of(after, reversed));
+        assertEquals(diff.addedVertices(), compressed.addedVertices());
+        assertEquals(new HashSet<>(diff.removedVertices()), new HashSet<>(compressed.removedVertices()));
+        assertEquals(diff.addedEdges(), compressed.addedEdges());
+        assertEquals(new HashSet<>(diff.removedEdges()), new HashSet<>(compressed.removedEdges()));
+        assertEquals(diff.changedEdges(), compressed.changedEdges());
+    }
+    
+    @Test
+    public void testDiffCompressedAgreesWithBruteForce() {
+        Random random = new Random(11);
+        List<String> order = new ArrayList<>();
+        Graph<String> before = new ConcreteVerticesGraph();
+        Graph<String> after = new ConcreteEdgesGraph();
+        for (int i = 0; i < 60; i++) {
+            order.add("v" + i);
+            before.add("v" + i);
+            after.add("v" + i);
+        }
+        for (int i = 0; i < 400; i++) {
+            before.set("v" + random.nextInt(60), "v" + random.nextInt(60), 1 + random.nextInt(3));
+            after.set("v" + random.nextInt(60), "v" + random.nextInt(60), 1 + random.nextInt(3));
+        }
+        Set<WeightedEdge<String>> added = new HashSet<>();
+        Set<WeightedEdge<String>> removed = new HashSet<>();
+        Set<String> changed = new HashSet<>();
+        for (String u : order) {
+            Map<String, Integer> from = before.targets(u);
+            Map<String, Integer> to = after.targets(u);
+            for (String v : order) {
+                Integer x = from.get(v);
+                Integer y = to.get(v);
+                if (x == null && y != null) {
+                    added.add(new WeightedEdge<>(u, v, y));
+                } else if (x != null && y == null) {
+                    removed.add(new WeightedEdge<>(u, v, x));
+                } else if (x != null && !x.equals(y)) {
+                    changed.add(u + " -> " + v + " (" + x + " -> " + y + ")");
+                }
+            }
+        }
+        List<GraphMerge.Diff<String>> diffs = Arrays.asList(GraphMerge.diff(before, after),
+                GraphMerge.diff(CompressedGraph.of(before, order), CompressedGraph.of(after, order)));
+        for (GraphMerge.Diff<String> diff : diffs) {
+            assertTrue(diff.addedVertices().isEmpty() && diff.removedVertices().isEmpty());
+            assertEquals(added, new HashSet<>(diff.addedEdges()));
+            assertEquals(added.size(), diff.addedEdges().size());
+            assertEquals(removed, new HashSet<>(diff.removedEdges()));
+            Set<String> changes = new HashSet<>();
+            for (GraphMerge.Change<String> change : diff.changedEdges()) {
+                changes.add(change.toString());
+            }
+            assertEquals(changed, changes);
+        }
+    }
+    
+}
@@ -7,9 +7,14 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import graph.ConcreteVerticesGraph;
+import graph.Graph;
+import graph.GraphCompaction;
+
 /**
  * Tests for GraphPoet.
  */
@@ -92,5 +97,86 @@ public class GraphPoetTest {
         assertEquals("Hello, poetic world.", result);
     }
     
+    @Test
+    public void testBridgePathOfSeveralWords() throws IOException {
+        // "seven -> days -> make -> a -> week." is the only path, three bridge words long
+        File corpus = new File("bridgePathCorpus.txt");
+        GraphPoet poet = new GraphPoet(corpus, 3, 1000, 1_000_000_000L);
+        assertEquals("Seven days make a week.", poet.poem("Seven week."));
+    }
+    
+    @Test
+    public void testBridgePathLongerThanLimit() throws IOException {
+        File corpus = new File("bridgePathCorpus.txt");
+        GraphPoet poet = new GraphPoet(corpus, 2, 1000, 1_000_000_000L);
+        assertEquals("Seven week.", poet.poem("Seven week."));
+    }
+    
+    @Test
+    public void testBridgePathHalvesShareAWord() {
+        // the heaviest halves meeting at m both go through h: from -h-> m is 101, m -h-> to is 101;
+        // the best simple path joins from -h-> m with the lighter m -y-> to (100)
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("from", "h", 1);
+        graph.set("h", "m", 100);
+        graph.set("m", "h", 100);
+        graph.set("h", "to", 1);
+        graph.set("from", "x", 50);
+        graph.set("x", "m", 49);
+        graph.set("m", "y", 50);
+        graph.set("y", "to", 50);
+        BridgeSearch search = new BridgeSearch(graph, 3, 1000, 1_000_000_000L);
+        assertEquals(Arrays.asList("h", "m", "y"), search.find("from", "to"));
+    }
+    
+    @Test
+    public void testCompactKeepsHeavyBridges() throws IOException {
+        // corpus edges: y -> b 3; one -> a, a -> x, a -> y, x -> b, b -> two, two -> a 2; b -> z, z -> y, b -> one 1
+        GraphPoet poet = new GraphPoet(new File("contextCorpus.txt"));
+        assertEquals("One a y b", poet.poem("One a b"));
+        GraphCompaction.Report report = poet.compact(2, Integer.MAX_VALUE);
+        assertEquals(3, report.edgesRemoved());
+        assertEquals(1, report.verticesRemoved()); // z
+        assertEquals("One a y b", poet.poem("One a b"));
+        
+        poet.compact(3, Integer.MAX_VALUE); // only y -> b is left
+        assertEquals("One a b", poet.poem("One a b"));
+    }
+    
+    @Test
+    public void testBridgeFilterStats() throws IOException {
+        File corpus = new File("mugar-omni-theater2.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        poet.enableBridgeFilter(0.01, 1 << 16);
+        // the filter must not change the poem
+        assertEquals("Test of the system.", poet.poem("Test the system."));
+        PoetStats stats = poet.stats();
+        assertEquals(2, stats.pairsQueried());
+        assertEquals(1, stats.bridgesFound());
+        assertTrue(stats.filterBytes() > 0);
+    }
+    
+    @Test
+    public void testCompressedIndexSamePoem() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("mugar-omni-theater2.txt"));
+        assertTrue(poet.compressIndex() > 0);
+        assertEquals("Test of the system.", poet.poem("Test the system."));
+        GraphPoet contextPoet = new GraphPoet(new File("contextCorpus.txt"), 3);
+        contextPoet.compressIndex();
+        assertEquals("One a x b", contextPoet.poem("One a b"));
+    }
+    
+    @Test
+    public void testContextModelChangesBridge() throws IOException {
+        // "a y b" is the heavier two-edge path, but "one a x" and "a x b" are trigrams of the corpus
+        File corpus = new File("contextCorpus.txt");
+        assertEquals("One a y b", new GraphPoet(corpus).poem("One a b"));
+        assertEquals("One a x b", new GraphPoet(corpus, 3).poem("One a b"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testContextOrderTooHigh() throws IOException {
+        new GraphPoet(new File("contextCorpus.txt"), 40);
+    }
     
 }
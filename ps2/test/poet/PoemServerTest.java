@@ -0,0 +1,146 @@
+/* Copyright (c) 2015-2016 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for PoemServer and PoemLoadClient.
+ */
+public class PoemServerTest {
+
+    // Testing strategy
+    //   request: GET with input, POST with body, missing input, input with no words, other method
+    //   poet: plain (lookups shared in a batch), with context model
+    //   concurrency: one client, several clients within one batch window, more
+    //     clients in one batch than handler threads, bad and good requests together
+    //   stats: counts, percentiles ordered
+    //   close: request still waiting for its batch answered with 503
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // status and body of a request to a local server
+    private static String[] request(int port, String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        StringBuilder text = new StringBuilder();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                text.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+            }
+        }
+        return new String[] { String.valueOf(status), text.toString() };
+    }
+
+    @Test
+    public void testGetAndPost() throws IOException {
+        try (PoemServer server = PoemServer.start(new GraphPoet(new File("mugar-omni-theater2.txt")), 0, 2, 0, 16)) {
+            String query = "/poem?input=" + URLEncoder.encode("Test the system.", "UTF-8");
+            assertArrayEquals(new String[] { "200", "Test of the system." },
+                    request(server.port(), "GET", query, null));
+            assertArrayEquals(new String[] { "200", "Test of the system." },
+                    request(server.port(), "POST", "/poem", "Test the system."));
+            assertEquals("400", request(server.port(), "GET", "/poem", null)[0]);
+            assertEquals("405", request(server.port(), "PUT", "/poem", "Test")[0]);
+            assertEquals(2, server.stats().requests());
+            assertTrue(request(server.port(), "GET", "/stats", null)[1].startsWith("requests 2"));
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareLookups() throws IOException, InterruptedException {
+        GraphPoet poet = new GraphPoet(new File("mugar-omni-theater2.txt"));
+        try (PoemServer server = PoemServer.start(poet, 0, 8, 200_000, 64)) {
+            PoemLoadClient.Result result = PoemLoadClient.run(server.port(),
+                    Collections.singletonList("Test the system."), 8, 8);
+            assertEquals(0, result.errors());
+            assertTrue(result.p50Micros() <= result.p99Micros());
+            PoemServer.Stats stats = server.stats();
+            assertEquals(8, stats.requests());
+            assertEquals(16, stats.pairsRequested());
+            assertTrue(stats.batches() < 8);
+            assertTrue(stats.pairsLookedUp() < stats.pairsRequested());
+            assertEquals(stats.pairsLookedUp(), poet.stats().pairsQueried());
+        }
+    }
+
+    @Test
+    public void testContextPoet() throws IOException, InterruptedException {
+        try (PoemServer server = PoemServer.start(new GraphPoet(new File("contextCorpus.txt"), 3), 0, 4, 1000, 8)) {
+            assertEquals("One a x b", request(server.port(), "POST", "/poem", "One a b")[1]);
+            PoemLoadClient.Result result = PoemLoadClient.run(server.port(), Arrays.asList("One a b", "a b"), 4, 20);
+            assertEquals(0, result.errors());
+            assertEquals(21, server.stats().requests());
+        }
+    }
+
+    @Test
+    public void testBadRequestBesideGoodOnes() throws IOException, InterruptedException, ExecutionException {
+        String[] inputs = { "Test the system.", " \n\t ", "Test the system." };
+        ExecutorService clients = Executors.newFixedThreadPool(inputs.length);
+        // one handler thread, yet both good requests wait in the same batch
+        try (PoemServer server = PoemServer.start(new GraphPoet(new File("mugar-omni-theater2.txt")), 0, 1, 500_000, 16)) {
+            List<Future<String[]>> responses = new ArrayList<>();
+            for (String input : inputs) {
+                responses.add(clients.submit(() -> request(server.port(), "POST", "/poem", input)));
+            }
+            assertArrayEquals(new String[] { "200", "Test of the system." }, responses.get(0).get());
+            assertEquals("400", responses.get(1).get()[0]);
+            assertArrayEquals(new String[] { "200", "Test of the system." }, responses.get(2).get());
+            assertEquals(2, server.stats().requests());
+            assertEquals(1, server.stats().batches());
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void testCloseAnswersWaitingRequests() throws Exception {
+        ExecutorService clients = Executors.newSingleThreadExecutor();
+        try {
+            Future<String[]> response;
+            // a ten second batch window holds the request until close()
+            try (PoemServer server = PoemServer.start(new GraphPoet(new File("mugar-omni-theater2.txt")),
+                    0, 2, 10_000_000, 16)) {
+                request(server.port(), "GET", "/stats", null); // connect once, so the next request is quick
+                response = clients.submit(() -> request(server.port(), "POST", "/poem", "Test the system."));
+                Thread.sleep(500);
+            }
+            assertArrayEquals(new String[] { "503", "Server stopping.\n" }, response.get());
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+}